@@ -0,0 +1,140 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.benchmark;
+
+import com.xasync.island.datastruct.SoftConcurrentHashMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BenchmarkMap adapts the maps under benchmark to the same operations, ConcurrentHashMap is the baseline. SOFT_NEAR
+ * is SoftConcurrentHashMap with a per-thread near cache.
+ *
+ * @author xasync.com
+ */
+public enum BenchmarkMap {
+
+    SOFT {
+        @Override
+        <K, V> Ops<K, V> create(int initialCapacity) {
+            return soft(new SoftConcurrentHashMap<>(initialCapacity));
+        }
+    },
+
+    SOFT_NEAR {
+        @Override
+        <K, V> Ops<K, V> create(int initialCapacity) {
+            return soft(SoftConcurrentHashMap.<K, V>builder()
+                    .initialCapacity(initialCapacity)
+                    .nearCache(NEAR_CACHE_CAPACITY)
+                    .build());
+        }
+    },
+
+    CHM {
+        @Override
+        <K, V> Ops<K, V> create(int initialCapacity) {
+            ConcurrentHashMap<K, V> map = new ConcurrentHashMap<>(initialCapacity);
+            return new Ops<K, V>() {
+                @Override
+                public V get(K key) {
+                    return map.get(key);
+                }
+
+                @Override
+                public void put(K key, V value) {
+                    map.put(key, value);
+                }
+
+                @Override
+                public void putIfAbsent(K key, V value) {
+                    map.putIfAbsent(key, value);
+                }
+
+                @Override
+                public Iterable<V> values() {
+                    return map.values();
+                }
+
+                @Override
+                public Iterable<Map.Entry<K, V>> entries() {
+                    return map.entrySet();
+                }
+            };
+        }
+    };
+
+    /**
+     * The number of nodes cached by each thread of SOFT_NEAR
+     */
+    private final static int NEAR_CACHE_CAPACITY = 1024;
+
+    /**
+     * Creates an empty map
+     *
+     * @param initialCapacity the initial capacity
+     * @param <K>             the type of key
+     * @param <V>             the type of value
+     * @return the operations of map
+     */
+    abstract <K, V> Ops<K, V> create(int initialCapacity);
+
+    private static <K, V> Ops<K, V> soft(SoftConcurrentHashMap<K, V> map) {
+        return new Ops<K, V>() {
+            @Override
+            public V get(K key) {
+                return map.getOnSoft(key);
+            }
+
+            @Override
+            public void put(K key, V value) {
+                map.putAsSoft(key, value);
+            }
+
+            @Override
+            public void putIfAbsent(K key, V value) {
+                map.putAsSoftIfAbsent(key, value);
+            }
+
+            @Override
+            public Iterable<V> values() {
+                return map.valuesOnSoft();
+            }
+
+            @Override
+            public Iterable<Map.Entry<K, V>> entries() {
+                return map.entrySetOnSoft();
+            }
+        };
+    }
+
+    /**
+     * The operations under benchmark
+     */
+    interface Ops<K, V> {
+
+        V get(K key);
+
+        void put(K key, V value);
+
+        void putIfAbsent(K key, V value);
+
+        Iterable<V> values();
+
+        Iterable<Map.Entry<K, V>> entries();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * KeyDistribution generates the sequence of keys accessed by the benchmarks
+ *
+ * @author xasync.com
+ */
+public enum KeyDistribution {
+
+    /**
+     * Each key is accessed with the same probability
+     */
+    UNIFORM {
+        @Override
+        int[] sample(int keyCount, int sampleSize, Random random) {
+            int[] keys = new int[sampleSize];
+            for (int i = 0; i < sampleSize; i++) {
+                keys[i] = random.nextInt(keyCount);
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * The keys are accessed by Zipf's law with exponent 0.99, the hot keys are scattered over the key space
+     */
+    ZIPFIAN {
+        @Override
+        int[] sample(int keyCount, int sampleSize, Random random) {
+            double[] cumulative = new double[keyCount];
+            double sum = 0;
+            for (int i = 0; i < keyCount; i++) {
+                sum += 1.0 / Math.pow(i + 1, 0.99);
+                cumulative[i] = sum;
+            }
+            //scrambles the ranks by a shuffled permutation so that the hot keys don't share the neighbouring buckets
+            int[] permutation = new int[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                permutation[i] = i;
+            }
+            for (int i = keyCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = permutation[i];
+                permutation[i] = permutation[j];
+                permutation[j] = swap;
+            }
+            int[] keys = new int[sampleSize];
+            for (int i = 0; i < sampleSize; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                rank = rank >= 0 ? rank : Math.min(-rank - 1, keyCount - 1);
+                keys[i] = permutation[rank];
+            }
+            return keys;
+        }
+    };
+
+    /**
+     * Generates the sequence of keys
+     *
+     * @param keyCount   the number of distinct keys
+     * @param sampleSize the length of sequence, it should be a power of two
+     * @param random     the source of randomness
+     * @return the keys in [0, keyCount)
+     */
+    abstract int[] sample(int keyCount, int sampleSize, Random random);
+}
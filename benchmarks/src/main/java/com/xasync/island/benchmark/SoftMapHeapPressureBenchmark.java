@@ -0,0 +1,113 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.benchmark;
+
+import com.xasync.island.datastruct.SoftConcurrentHashMap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SoftMapHeapPressureBenchmark loads 1KB values into a small heap, so the GC keeps clearing the soft references while
+ * the threads read and load. It measures the throughput of getOrLoad and counts the hits and loads, which shows how
+ * the map behaves when the soft references are cleared.
+ *
+ * @author xasync.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256m", "-Xmx256m", "-XX:SoftRefLRUPolicyMSPerMB=0"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class SoftMapHeapPressureBenchmark {
+    private final static int SAMPLE_SIZE = 1 << 20;
+    private final static int SAMPLE_MASK = SAMPLE_SIZE - 1;
+    private final static int VALUE_SIZE = 1024;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    /**
+     * 512K keys of 1KB values never fit in a heap of 256MB
+     */
+    @Param({"524288"})
+    public int keyCount;
+
+    private SoftConcurrentHashMap<Integer, byte[]> map;
+    private Integer[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = SoftConcurrentHashMap.<Integer, byte[]>builder()
+                .initialCapacity(keyCount)
+                .loader(key -> new byte[VALUE_SIZE])
+                .build();
+        int[] sample = distribution.sample(keyCount, SAMPLE_SIZE, new Random(7));
+        keys = new Integer[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            keys[i] = sample[i];
+        }
+    }
+
+    /**
+     * The cursor and counters of each thread, the counters are reported as the secondary results
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long hits;
+        public long loads;
+        private int index = new Random().nextInt(SAMPLE_SIZE);
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            loads = 0;
+        }
+
+        int next() {
+            return index++ & SAMPLE_MASK;
+        }
+    }
+
+    @Benchmark
+    public byte[] getOrLoad(Counters counters) {
+        Integer key = keys[counters.next()];
+        byte[] value = map.getOnSoft(key);
+        if (value != null) {
+            counters.hits++;
+            return value;
+        }
+        counters.loads++;
+        return map.getOrLoad(key);
+    }
+}
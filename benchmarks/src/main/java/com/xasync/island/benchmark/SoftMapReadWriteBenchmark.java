@@ -0,0 +1,109 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SoftMapReadWriteBenchmark measures the throughput of getOnSoft, putAsSoft and putAsSoftIfAbsent against
+ * ConcurrentHashMap, under the uniform and zipfian distributions of keys. The number of threads is given by -t, e.g.
+ * -t 1, -t 4 and -t 8 for the single-threaded, moderate and high contention.
+ *
+ * @author xasync.com
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SoftMapReadWriteBenchmark {
+    private final static int SAMPLE_SIZE = 1 << 20;
+    private final static int SAMPLE_MASK = SAMPLE_SIZE - 1;
+
+    @Param({"SOFT", "SOFT_NEAR", "CHM"})
+    public BenchmarkMap map;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    @Param({"100000"})
+    public int keyCount;
+
+    private BenchmarkMap.Ops<Integer, String> ops;
+    private Integer[] keys;
+    private String[] values;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ops = map.create(keyCount);
+        values = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            values[i] = "value-" + i;
+            ops.put(i, values[i]);
+        }
+        int[] sample = distribution.sample(keyCount, SAMPLE_SIZE, new Random(7));
+        keys = new Integer[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            keys[i] = sample[i];
+        }
+    }
+
+    /**
+     * The cursor of each thread, the threads start from different positions of the sequence
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index = new Random().nextInt(SAMPLE_SIZE);
+
+        int next() {
+            return index++ & SAMPLE_MASK;
+        }
+    }
+
+    @Benchmark
+    public String get(Cursor cursor) {
+        return ops.get(keys[cursor.next()]);
+    }
+
+    @Benchmark
+    public void put(Cursor cursor) {
+        Integer key = keys[cursor.next()];
+        ops.put(key, values[key]);
+    }
+
+    @Benchmark
+    public void putIfAbsent(Cursor cursor) {
+        Integer key = keys[cursor.next()];
+        ops.putIfAbsent(key, values[key]);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SoftMapViewBenchmark measures a full traversal of valuesOnSoft and entrySetOnSoft against the views of
+ * ConcurrentHashMap, run it with -prof gc to compare the allocation of each traversal.
+ *
+ * @author xasync.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SoftMapViewBenchmark {
+
+    @Param({"SOFT", "CHM"})
+    public BenchmarkMap map;
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    private BenchmarkMap.Ops<Integer, Integer> ops;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ops = map.create(size);
+        for (int i = 0; i < size; i++) {
+            ops.put(i, i);
+        }
+    }
+
+    @Benchmark
+    public long values() {
+        long sum = 0;
+        for (Integer value : ops.values()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long entries() {
+        long sum = 0;
+        for (Map.Entry<Integer, Integer> entry : ops.entries()) {
+            sum += entry.getKey() + entry.getValue();
+        }
+        return sum;
+    }
+}
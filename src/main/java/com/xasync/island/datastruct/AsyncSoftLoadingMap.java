@@ -0,0 +1,337 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * AsyncSoftLoadingMap is the asynchronous variant of SoftConcurrentHashMap, a miss never blocks the caller and returns
+ * a CompletableFuture which is completed by the loader running on the executor, likes:
+ * <pre>
+ *     AsyncSoftLoadingMap&lt;Long, User&gt; users = AsyncSoftLoadingMap.&lt;Long, User&gt;builder()
+ *          .map(SoftConcurrentHashMap.&lt;Long, User&gt;builder().maximumSize(10_000))
+ *          .loader(userClient::get)
+ *          .bulkLoader(userClient::getAll)
+ *          .build();
+ *     users.getAsync(1L).thenAccept(...);
+ * </pre>
+ * The loaded values are kept softly by a SoftConcurrentHashMap, while the loadings in flight are kept strongly so
+ * that the concurrent callers of the same key always share one loading. A loading which fails or computes null is
+ * dropped when it completes, and the next call loads again.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+public class AsyncSoftLoadingMap<K, V> {
+
+    /**
+     * The map which keeps the loaded values softly
+     */
+    private final SoftConcurrentHashMap<K, V> map;
+
+    /**
+     * The loadings in flight
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loadings = new ConcurrentHashMap<>();
+
+    private final Executor executor;
+    private final Function<? super K, ? extends V> loader;
+    private final Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader;
+
+    private AsyncSoftLoadingMap(Builder<K, V> builder) {
+        this.map = builder.mapBuilder.build();
+        this.executor = Objects.nonNull(builder.executor) ? builder.executor : DefaultExecutorHolder.EXECUTOR;
+        this.loader = builder.loader;
+        this.bulkLoader = builder.bulkLoader;
+    }
+
+    /**
+     * Creates a builder
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     * @return Builder
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Returns the future of the value to which the specified key is mapped, it is loaded asynchronously if the map
+     * contains no live value and no loading of the key is in flight.
+     *
+     * @param key the key
+     * @return the future of value, it completes with null if the loader returns null
+     */
+    public CompletableFuture<V> getAsync(K key) {
+        CompletableFuture<V> future = getIfPresent(key);
+        if (Objects.nonNull(future)) {
+            return future;
+        }
+        CompletableFuture<V> loading = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loadings.putIfAbsent(key, loading);
+        if (Objects.nonNull(inFlight)) {
+            return inFlight;
+        }
+        //double check because the previous loading may complete between getIfPresent and putIfAbsent
+        V value = map.getOnSoft(key);
+        if (Objects.nonNull(value)) {
+            loadings.remove(key, loading);
+            loading.complete(value);
+            return loading;
+        }
+        submit(() -> complete(key, loading, load(key)), Collections.singletonMap(key, loading));
+        return loading;
+    }
+
+    /**
+     * Returns the future of the values to which the specified keys are mapped, the keys which have no live value and
+     * no loading in flight are loaded by one call of the bulkLoader. The keys without values are absent from the
+     * result.
+     *
+     * @param keys the keys
+     * @return the future of the values
+     */
+    public CompletableFuture<Map<K, V>> getAllAsync(Iterable<? extends K> keys) {
+        Objects.requireNonNull(keys, "requires non-null keys");
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> misses = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (futures.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<V> future = getIfPresent(key);
+            if (Objects.isNull(future)) {
+                CompletableFuture<V> loading = new CompletableFuture<>();
+                future = loadings.putIfAbsent(key, loading);
+                if (Objects.isNull(future)) {
+                    future = loading;
+                    misses.put(key, loading);
+                }
+            }
+            futures.put(key, future);
+        }
+        if (!misses.isEmpty()) {
+            if (Objects.nonNull(bulkLoader)) {
+                submit(() -> completeAll(misses, bulkLoader.apply(Collections.unmodifiableSet(misses.keySet()))),
+                        misses);
+            } else {
+                misses.forEach((key, loading) ->
+                        submit(() -> complete(key, loading, loader.apply(key)), Collections.singletonMap(key, loading)));
+            }
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<K, V> result = new LinkedHashMap<>();
+            futures.forEach((key, future) -> {
+                V value = future.join();
+                if (Objects.nonNull(value)) {
+                    result.put(key, value);
+                }
+            });
+            return Collections.unmodifiableMap(result);
+        });
+    }
+
+    /**
+     * Returns the future of the live value or the loading in flight, it never starts a loading.
+     *
+     * @param key the key
+     * @return the future, or null if the key has neither a live value nor a loading in flight
+     */
+    public CompletableFuture<V> getIfPresent(K key) {
+        V value = map.getOnSoft(key);
+        if (Objects.nonNull(value)) {
+            return CompletableFuture.completedFuture(value);
+        }
+        return loadings.get(key);
+    }
+
+    /**
+     * Associates the value with the key, it replaces the value loaded by the loading in flight.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        Objects.requireNonNull(value, "requires a non-null value");
+        map.putAsSoft(key, value);
+    }
+
+    /**
+     * Removes the value of the key, the value of the loading in flight is returned to its callers but not kept.
+     *
+     * @param key the key
+     */
+    public void invalidate(K key) {
+        loadings.remove(key);
+        map.remove(key);
+    }
+
+    /**
+     * Returns the SoftConcurrentHashMap which keeps the loaded values, it can be used synchronously.
+     *
+     * @return SoftConcurrentHashMap
+     */
+    public SoftConcurrentHashMap<K, V> synchronous() {
+        return map;
+    }
+
+    private V load(K key) {
+        if (Objects.nonNull(loader)) {
+            return loader.apply(key);
+        }
+        Map<? extends K, ? extends V> loaded = bulkLoader.apply(Collections.singleton(key));
+        return Objects.nonNull(loaded) ? loaded.get(key) : null;
+    }
+
+    /**
+     * Runs the loading task on the executor, the loadings fail if the task throws or is rejected.
+     */
+    private void submit(Runnable task, Map<K, CompletableFuture<V>> reserved) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable ex) {
+                    reserved.forEach((key, loading) -> fail(key, loading, ex));
+                }
+            });
+        } catch (Throwable ex) {
+            reserved.forEach((key, loading) -> fail(key, loading, ex));
+        }
+    }
+
+    private void completeAll(Map<K, CompletableFuture<V>> reserved, Map<? extends K, ? extends V> loaded) {
+        reserved.forEach((key, loading) -> complete(key, loading, Objects.nonNull(loaded) ? loaded.get(key) : null));
+    }
+
+    private void complete(K key, CompletableFuture<V> loading, V value) {
+        //the loaded value is dropped if the key is invalidated or put meanwhile
+        if (loadings.remove(key, loading) && Objects.nonNull(value)) {
+            map.putAsSoftIfAbsent(key, value);
+        }
+        loading.complete(value);
+    }
+
+    private void fail(K key, CompletableFuture<V> loading, Throwable ex) {
+        loadings.remove(key, loading);
+        loading.completeExceptionally(ex);
+    }
+
+    /**
+     * Builder is used to construct an AsyncSoftLoadingMap
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    public static final class Builder<K, V> {
+        private SoftConcurrentHashMap.Builder<K, V> mapBuilder = SoftConcurrentHashMap.builder();
+        private Executor executor;
+        private Function<? super K, ? extends V> loader;
+        private Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the builder of SoftConcurrentHashMap which keeps the loaded values, so the values can be bounded,
+         * expired or recorded, its loader is not used.
+         *
+         * @param mapBuilder the builder of SoftConcurrentHashMap
+         * @return Builder
+         */
+        public Builder<K, V> map(SoftConcurrentHashMap.Builder<K, V> mapBuilder) {
+            this.mapBuilder = Objects.requireNonNull(mapBuilder, "requires a non-null mapBuilder");
+            return this;
+        }
+
+        /**
+         * Sets the executor which runs the loaders, it defaults to a virtual-thread-per-task executor if the JVM
+         * supports virtual threads, otherwise ForkJoinPool.commonPool().
+         *
+         * @param executor the executor
+         * @return Builder
+         */
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "requires a non-null executor");
+            return this;
+        }
+
+        /**
+         * Sets the loader which loads the value of one key
+         *
+         * @param loader the loader
+         * @return Builder
+         */
+        public Builder<K, V> loader(Function<? super K, ? extends V> loader) {
+            this.loader = Objects.requireNonNull(loader, "requires a non-null loader");
+            return this;
+        }
+
+        /**
+         * Sets the loader which loads the values of many keys by one call, it is used by getAllAsync. The keys
+         * absent from the returned map have no values.
+         *
+         * @param bulkLoader the bulk loader
+         * @return Builder
+         */
+        public Builder<K, V> bulkLoader(Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+            this.bulkLoader = Objects.requireNonNull(bulkLoader, "requires a non-null bulkLoader");
+            return this;
+        }
+
+        /**
+         * Builds the AsyncSoftLoadingMap
+         *
+         * @return AsyncSoftLoadingMap
+         */
+        public AsyncSoftLoadingMap<K, V> build() {
+            if (Objects.isNull(loader) && Objects.isNull(bulkLoader)) {
+                throw new IllegalStateException("the AsyncSoftLoadingMap requires a loader or a bulkLoader");
+            }
+            return new AsyncSoftLoadingMap<>(this);
+        }
+    }
+
+    /**
+     * DefaultExecutorHolder creates the default executor lazily, the virtual threads are looked up by reflection so
+     * that it still runs on Java 8.
+     */
+    private static final class DefaultExecutorHolder {
+        private final static Executor EXECUTOR = create();
+
+        private static Executor create() {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (Executor) factory.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                return ForkJoinPool.commonPool();
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.util.Objects;
+
+/**
+ * CacheStats is an immutable snapshot of the statistics of SoftConcurrentHashMap, it is returned by
+ * {@link SoftConcurrentHashMap#stats()} and all counts are zero if the map doesn't record stats.
+ *
+ * @author xasync.com
+ */
+public final class CacheStats {
+    private final static CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+    private final long evictionWeight;
+    private final long expirationCount;
+    private final long collectedCount;
+    private final long reclaimCount;
+    private final long totalReclaimTime;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+               long evictionCount, long evictionWeight, long expirationCount, long collectedCount,
+               long reclaimCount, long totalReclaimTime) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.evictionWeight = evictionWeight;
+        this.expirationCount = expirationCount;
+        this.collectedCount = collectedCount;
+        this.reclaimCount = reclaimCount;
+        this.totalReclaimTime = totalReclaimTime;
+    }
+
+    /**
+     * Returns the snapshot whose counts are all zero
+     *
+     * @return CacheStats
+     */
+    public static CacheStats empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the number of lookups which return a live value
+     *
+     * @return the hit count
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups which find no mapping, a collected value or an expired value
+     *
+     * @return the miss count
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of lookups
+     *
+     * @return the request count
+     */
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Returns the ratio of hits to lookups, it is 1.0 if there is no lookup
+     *
+     * @return the hit rate
+     */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * Returns the ratio of misses to lookups, it is 0.0 if there is no lookup
+     *
+     * @return the miss rate
+     */
+    public double missRate() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 0.0 : (double) missCount / requestCount;
+    }
+
+    /**
+     * Returns the number of loadings which complete normally, including the ones computing null
+     *
+     * @return the load success count
+     */
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * Returns the number of loadings which throw an exception
+     *
+     * @return the load failure count
+     */
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Returns the total time spent on loading, in nanoseconds
+     *
+     * @return the total load time
+     */
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Returns the average time spent on a loading, in nanoseconds
+     *
+     * @return the average load penalty
+     */
+    public double averageLoadPenalty() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    /**
+     * Returns the number of entries evicted by the size or weight bound
+     *
+     * @return the eviction count
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the total weight of entries evicted by the size or weight bound
+     *
+     * @return the eviction weight
+     */
+    public long evictionWeight() {
+        return evictionWeight;
+    }
+
+    /**
+     * Returns the number of entries removed because they have expired
+     *
+     * @return the expiration count
+     */
+    public long expirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * Returns the number of values collected by GC which have been discovered by the map
+     *
+     * @return the collected count
+     */
+    public long collectedCount() {
+        return collectedCount;
+    }
+
+    /**
+     * Returns the number of reclaiming batches, each of them drains the collected and expired entries
+     *
+     * @return the reclaim count
+     */
+    public long reclaimCount() {
+        return reclaimCount;
+    }
+
+    /**
+     * Returns the total time spent on reclaiming, in nanoseconds
+     *
+     * @return the total reclaim time
+     */
+    public long totalReclaimTime() {
+        return totalReclaimTime;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CacheStats)) {
+            return false;
+        }
+        CacheStats that = (CacheStats) other;
+        return hitCount == that.hitCount && missCount == that.missCount
+                && loadSuccessCount == that.loadSuccessCount && loadFailureCount == that.loadFailureCount
+                && totalLoadTime == that.totalLoadTime && evictionCount == that.evictionCount
+                && evictionWeight == that.evictionWeight && expirationCount == that.expirationCount
+                && collectedCount == that.collectedCount && reclaimCount == that.reclaimCount
+                && totalReclaimTime == that.totalReclaimTime;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hitCount, missCount, loadSuccessCount, loadFailureCount, totalLoadTime, evictionCount,
+                evictionWeight, expirationCount, collectedCount, reclaimCount, totalReclaimTime);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount
+                + ", loadSuccessCount=" + loadSuccessCount + ", loadFailureCount=" + loadFailureCount
+                + ", totalLoadTime=" + totalLoadTime + ", evictionCount=" + evictionCount
+                + ", evictionWeight=" + evictionWeight + ", expirationCount=" + expirationCount
+                + ", collectedCount=" + collectedCount + ", reclaimCount=" + reclaimCount
+                + ", totalReclaimTime=" + totalReclaimTime + "}";
+    }
+}
@@ -0,0 +1,49 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+/**
+ * CacheStatsMXBean exposes the statistics of SoftConcurrentHashMap through JMX, it is registered if the map is built
+ * by {@link SoftConcurrentHashMap.Builder#recordStats(String)}.
+ *
+ * @author xasync.com
+ */
+public interface CacheStatsMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    double getAverageLoadPenalty();
+
+    long getEvictionCount();
+
+    long getEvictionWeight();
+
+    long getExpirationCount();
+
+    long getCollectedCount();
+
+    long getReclaimCount();
+
+    long getTotalReclaimTime();
+}
@@ -0,0 +1,201 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * CompactSoftConcurrentMap is a concurrent map whose values are held softly, it provides the same putAsSoft/getOnSoft
+ * API as SoftConcurrentHashMap with a smaller footprint per entry.
+ * <p>
+ * An entry of SoftConcurrentHashMap costs a node of ConcurrentHashMap and a SoftDataNode. This map is a
+ * SoftProbingTable like LongSoftConcurrentMap, which stores the keys in an Object[] and the soft references in a
+ * parallel array, so an entry only costs two slots and the reference. The reference remembers the hash of its key
+ * instead of the key, which is enough to find its slot by identity when it is reclaimed. The readers probe the table
+ * under an optimistic stamp of StampedLock and fall back to the read lock only if a writer interferes. The entries
+ * whose values have been collected by GC are removed by ReferenceReaper in bounded batches.
+ * <p>
+ * It has none of the optional features of SoftConcurrentHashMap, choose it for large maps of small values.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+public class CompactSoftConcurrentMap<K, V> {
+    private final static int DEFAULT_CAPACITY = 16;
+    private final static int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private final static int RECLAIM_BATCH_SIZE = 64;
+
+    final SoftProbingTable<V> table;
+
+    /**
+     * Non-parameter constructor
+     */
+    public CompactSoftConcurrentMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create an instance with the initial capacity you expect
+     *
+     * @param initialCapacity The number of elements you expect the container to hold
+     */
+    public CompactSoftConcurrentMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create an instance with the initial capacity and the number of concurrently updating threads you expect
+     *
+     * @param initialCapacity  The number of elements you expect the container to hold
+     * @param concurrencyLevel the estimated number of concurrently updating threads.
+     */
+    public CompactSoftConcurrentMap(int initialCapacity, int concurrencyLevel) {
+        this.table = new SoftProbingTable<>(initialCapacity, concurrencyLevel, true);
+        ReferenceReaper.register(this, (map, batchSize) -> map.table.reclaim(batchSize), RECLAIM_BATCH_SIZE);
+    }
+
+    /**
+     * Maps the specified key to the specified value, the value will be held softly.
+     *
+     * @param key   key with which the specified value is to be associated, non-null
+     * @param value value to be associated with the specified key, non-null
+     */
+    public void putAsSoft(K key, V value) {
+        Objects.requireNonNull(value, "requires a non-null value");
+        table.put(key, new CompactSoftReference<>(hash(key), value, table.referenceQueue()), false);
+    }
+
+    /**
+     * If the specified key is not associated with a value or its value has been collected by GC, associates it with
+     * the given value.
+     *
+     * @param key   key with which the specified value is to be associated, non-null
+     * @param value value to be associated with the specified key, non-null
+     */
+    public void putAsSoftIfAbsent(K key, V value) {
+        Objects.requireNonNull(value, "requires a non-null value");
+        table.put(key, new CompactSoftReference<>(hash(key), value, table.referenceQueue()), true);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key or
+     * the value has been collected by GC.
+     *
+     * @param key key with which the specified value is to be associated
+     * @return the value
+     */
+    public V getOnSoft(K key) {
+        SoftProbingTable.Reference<V> ref = table.get(key, hash(key));
+        return Objects.nonNull(ref) ? ref.get() : null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or defaultValue if this map contains no mapping for the
+     * key.
+     *
+     * @param key          key with which the specified value is to be associated
+     * @param defaultValue the default value if this map contains no mapping for the key.
+     * @return the value
+     */
+    public V getOnSoftOrDefault(K key, V defaultValue) {
+        V value = getOnSoft(key);
+        return Objects.nonNull(value) ? value : defaultValue;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the key whose value is not collected.
+     *
+     * @param key the key
+     * @return true or false
+     */
+    public boolean containsKey(K key) {
+        return Objects.nonNull(getOnSoft(key));
+    }
+
+    /**
+     * Removes the mapping for the key
+     *
+     * @param key the key
+     * @return the previous value, or null if there is no mapping or the value has been collected
+     */
+    public V remove(K key) {
+        SoftProbingTable.Reference<V> ref = table.remove(key, hash(key));
+        return Objects.nonNull(ref) ? ref.get() : null;
+    }
+
+    /**
+     * Returns the number of mappings, it includes the mappings whose values are collected but not reclaimed yet.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Returns true if this map contains no mappings
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all of the mappings from this map
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Performs the given action for each mapping whose value is not collected, it is weakly consistent.
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachOnSoft(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action, "requires a non-null action");
+        table.forEach((key, ref, value) -> action.accept((K) key, value));
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * CompactSoftReference holds the value softly and remembers the hash of its key for reclaiming
+     *
+     * @param <V> the type of value
+     */
+    private static class CompactSoftReference<V> extends SoftProbingTable.Reference<V> {
+        private final int hash;
+
+        CompactSoftReference(int hash, V value, ReferenceQueue<? super V> q) {
+            super(value, q);
+            this.hash = hash;
+        }
+
+        @Override
+        long hash() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ConcurrentBloomFilter tells whether an element might have been put or definitely not, likes rejecting the lookups
+ * of the keys which don't exist before they reach the loader:
+ * <pre>
+ *     ConcurrentBloomFilter&lt;Long&gt; orderIds = new ConcurrentBloomFilter&lt;&gt;(10_000_000, 0.01);
+ *     if (!orderIds.mightContain(id)) {
+ *         return null;
+ *     }
+ * </pre>
+ * The bits are held by an AtomicLongArray and set by CAS, so it is lock-free and never loses a concurrent put. The
+ * k positions of an element are derived from two halves of a 64-bit hash of its hashCode, so the elements must have a
+ * well distributed hashCode. Two filters with the same size can be merged into their union.
+ *
+ * @param <T> the type of element
+ * @author xasync.com
+ */
+public final class ConcurrentBloomFilter<T> {
+    private final static int MAX_HASH_COUNT = 16;
+
+    private final AtomicLongArray bits;
+    private final long bitMask;
+    private final int hashCount;
+
+    /**
+     * Creates a filter sized for the expected number of elements and the false positive probability
+     *
+     * @param expectedInsertions the expected number of distinct elements
+     * @param fpp                the desired false positive probability, in (0.0, 1.0)
+     */
+    public ConcurrentBloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || !(fpp > 0.0 && fpp < 1.0)) {
+            throw new IllegalArgumentException("the expectedInsertions must be positive and the fpp must be in " +
+                    "(0.0, 1.0): " + expectedInsertions + ", " + fpp);
+        }
+        double optimalBits = -expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2));
+        long words = Math.max(1L, (long) Math.ceil(optimalBits / Long.SIZE));
+        int wordCount = (int) Math.min(ceilingPowerOfTwo(words), 1L << 30);
+        this.bits = new AtomicLongArray(wordCount);
+        this.bitMask = (long) wordCount * Long.SIZE - 1;
+        long hashes = Math.round((double) bitSize() / expectedInsertions * Math.log(2));
+        this.hashCount = (int) Math.max(1, Math.min(hashes, MAX_HASH_COUNT));
+    }
+
+    /**
+     * Puts the element into the filter
+     *
+     * @param element the element, non-null
+     * @return true if any bit is changed, which means the element was definitely absent
+     */
+    public boolean put(T element) {
+        long hash = hash64(element);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean changed = false;
+        for (int i = 1; i <= hashCount; i++) {
+            long index = (h1 + (long) i * h2) & bitMask;
+            changed |= setBit(index);
+        }
+        return changed;
+    }
+
+    /**
+     * Returns false if the element has definitely not been put, or true if it might have been put
+     *
+     * @param element the element, non-null
+     * @return true or false
+     */
+    public boolean mightContain(T element) {
+        long hash = hash64(element);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = (h1 + (long) i * h2) & bitMask;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges the elements of other filter into this one, the other filter is read while it is being modified, so
+     * the elements put into it concurrently may be missed.
+     *
+     * @param other the other filter which has the same bit size and hash count
+     */
+    public void merge(ConcurrentBloomFilter<T> other) {
+        Objects.requireNonNull(other, "requires a non-null filter");
+        if (other.bits.length() != bits.length() || other.hashCount != hashCount) {
+            throw new IllegalArgumentException("the filters have different sizes: " + bitSize() + "/" + hashCount
+                    + " vs " + other.bitSize() + "/" + other.hashCount);
+        }
+        for (int i = 0; i < bits.length(); i++) {
+            long word = other.bits.get(i);
+            if (word != 0) {
+                bits.accumulateAndGet(i, word, (x, y) -> x | y);
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct elements put into the filter by the number of set bits
+     *
+     * @return the approximate number of elements
+     */
+    public long approximateElementCount() {
+        double setBits = bitCount();
+        double size = bitSize();
+        if (setBits >= size) {
+            return Long.MAX_VALUE;
+        }
+        return Math.round(-size / hashCount * Math.log(1 - setBits / size));
+    }
+
+    /**
+     * Returns the false positive probability estimated by the number of set bits
+     *
+     * @return the probability
+     */
+    public double expectedFpp() {
+        return Math.pow((double) bitCount() / bitSize(), hashCount);
+    }
+
+    /**
+     * Returns the number of bits
+     *
+     * @return the number of bits
+     */
+    public long bitSize() {
+        return (long) bits.length() * Long.SIZE;
+    }
+
+    /**
+     * Returns the number of bits set for each element
+     *
+     * @return the number of hash functions
+     */
+    public int hashCount() {
+        return hashCount;
+    }
+
+    private long bitCount() {
+        long count = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            count += Long.bitCount(bits.get(i));
+        }
+        return count;
+    }
+
+    private boolean setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        for (long current = bits.get(word); (current & mask) == 0; current = bits.get(word)) {
+            if (bits.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long ceilingPowerOfTwo(long x) {
+        return x <= 1 ? 1 : 1L << -Long.numberOfLeadingZeros(x - 1);
+    }
+
+    /**
+     * Spreads the hashCode to 64 bits by the finalizer of MurmurHash3
+     */
+    static long hash64(Object element) {
+        long h = Objects.requireNonNull(element, "requires a non-null element").hashCode() * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CountMinSketch estimates the frequency of elements in a stream with a fixed memory, the estimate is never less than
+ * the true count and exceeds it by at most epsilon * N with the probability of confidence, where N is the number of
+ * additions. Unlike FrequencySketch, it is thread-safe and lock-free: the counters are held by an AtomicLongArray and
+ * updated by CAS.
+ * <p>
+ * To make the estimates reflect the recent history, the counts are aged: once the number of additions reaches the
+ * sample size, all the counters are halved. Two sketches with the same dimensions can be merged by summing their
+ * counters.
+ *
+ * @param <T> the type of element
+ * @author xasync.com
+ */
+public final class CountMinSketch<T> {
+    private final static int MAX_DEPTH = 16;
+    private final static int SAMPLE_MASK = 63;
+
+    private final AtomicLongArray counters;
+    private final int depth;
+    private final int widthMask;
+    private final long sampleSize;
+    private final LongAdder additions = new LongAdder();
+    private final AtomicBoolean aging = new AtomicBoolean();
+
+    /**
+     * Creates a sketch with the dimensions of the counters
+     *
+     * @param width      the number of counters per row, which is rounded up to a power of two
+     * @param depth      the number of rows, in [1, 16]
+     * @param sampleSize the number of additions after which the counts are halved, or non-positive to never age
+     */
+    public CountMinSketch(int width, int depth, long sampleSize) {
+        if (width <= 0 || width > (1 << 26) || depth <= 0 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("the width must be in [1, 2^26] and the depth in [1, " + MAX_DEPTH
+                    + "]: " + width + ", " + depth);
+        }
+        int rowWidth = ceilingPowerOfTwo(width);
+        this.counters = new AtomicLongArray(rowWidth * depth);
+        this.depth = depth;
+        this.widthMask = rowWidth - 1;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Creates a sketch whose estimate exceeds the true count by at most epsilon of the additions with the
+     * probability of confidence
+     *
+     * @param epsilon    the relative error, in (0.0, 1.0)
+     * @param confidence the probability of the error bound, in (0.0, 1.0)
+     * @param sampleSize the number of additions after which the counts are halved, or non-positive to never age
+     * @param <T>        the type of element
+     * @return a new sketch
+     */
+    public static <T> CountMinSketch<T> withAccuracy(double epsilon, double confidence, long sampleSize) {
+        if (!(epsilon > 0.0 && epsilon < 1.0) || !(confidence > 0.0 && confidence < 1.0)) {
+            throw new IllegalArgumentException("the epsilon and confidence must be in (0.0, 1.0): "
+                    + epsilon + ", " + confidence);
+        }
+        int width = (int) Math.min(Math.ceil(Math.E / epsilon), 1 << 26);
+        int depth = (int) Math.min(Math.ceil(Math.log(1 / (1 - confidence))), MAX_DEPTH);
+        return new CountMinSketch<>(width, Math.max(depth, 1), sampleSize);
+    }
+
+    /**
+     * Increments the frequency of the element
+     *
+     * @param element the element, non-null
+     */
+    public void increment(T element) {
+        add(element, 1);
+    }
+
+    /**
+     * Adds the count to the frequency of the element, and ages the counts if the sample size is reached
+     *
+     * @param element the element, non-null
+     * @param count   the positive count
+     */
+    public void add(T element, long count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("the count must be positive: " + count);
+        }
+        long hash = ConcurrentBloomFilter.hash64(element);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < depth; i++) {
+            counters.getAndAccumulate(indexOf(h1, h2, i), count, CountMinSketch::saturatedAdd);
+        }
+        additions.add(count);
+        // reading the sum of LongAdder visits all its cells, so it is checked by a sample of additions
+        if (sampleSize > 0 && (ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) == 0
+                && additions.sum() >= sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * Returns the estimated frequency of the element, which is the minimum of its counters
+     *
+     * @param element the element, non-null
+     * @return the estimated frequency
+     */
+    public long frequency(T element) {
+        long hash = ConcurrentBloomFilter.hash64(element);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long frequency = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            frequency = Math.min(frequency, counters.get(indexOf(h1, h2, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Halves all the counters and the number of additions, it is skipped if other thread is aging the sketch. The
+     * counters are halved one by one, so the concurrent additions are kept, but may be halved or not.
+     */
+    public void age() {
+        if (!aging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (int i = 0; i < counters.length(); i++) {
+                if (counters.get(i) != 0) {
+                    counters.getAndUpdate(i, c -> c >>> 1);
+                }
+            }
+            additions.add(-(additions.sum() >>> 1));
+        } finally {
+            aging.set(false);
+        }
+    }
+
+    /**
+     * Merges the counts of other sketch into this one
+     *
+     * @param other the other sketch which has the same width and depth
+     */
+    public void merge(CountMinSketch<T> other) {
+        Objects.requireNonNull(other, "requires a non-null sketch");
+        if (other.depth != depth || other.widthMask != widthMask) {
+            throw new IllegalArgumentException("the sketches have different dimensions: " + width() + "x" + depth
+                    + " vs " + other.width() + "x" + other.depth);
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            long count = other.counters.get(i);
+            if (count != 0) {
+                counters.getAndAccumulate(i, count, CountMinSketch::saturatedAdd);
+            }
+        }
+        additions.add(other.additions.sum());
+    }
+
+    /**
+     * Returns the number of additions since the last aging, halved by each aging
+     *
+     * @return the number of additions
+     */
+    public long additions() {
+        return additions.sum();
+    }
+
+    /**
+     * Returns the number of counters per row
+     *
+     * @return the width
+     */
+    public int width() {
+        return widthMask + 1;
+    }
+
+    /**
+     * Returns the number of rows
+     *
+     * @return the depth
+     */
+    public int depth() {
+        return depth;
+    }
+
+    private int indexOf(int h1, int h2, int row) {
+        int combined = h1 + (row + 1) * h2;
+        return row * (widthMask + 1) + ((combined ^ (combined >>> 16)) & widthMask);
+    }
+
+    private static long saturatedAdd(long x, long y) {
+        long sum = x + y;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return x <= 1 ? 1 : 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+/**
+ * FrequencySketch is a 4-bit count-min sketch which estimates the popularity of keys within a time window, and all
+ * counters are halved when the number of increments reaches the sample size so that the history ages out.
+ * <p>
+ * The table can grow later by ensureCapacity, so a sketch whose number of entries is unknown up front starts small.
+ * It is not thread-safe, and the caller must guard it by a lock.
+ *
+ * @author xasync.com
+ */
+final class FrequencySketch {
+    private final static long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private final static long RESET_MASK = 0x7777777777777777L;
+
+    private final static int MINIMUM_CAPACITY = 16;
+    private final static int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * Constructor
+     *
+     * @param maximum the maximum number of entries expected to be tracked
+     */
+    FrequencySketch(long maximum) {
+        resize(capacityOf(maximum));
+    }
+
+    /**
+     * Grows the table if it is too small to track the number of entries, the popularity is forgotten once it grows.
+     *
+     * @param maximum the maximum number of entries expected to be tracked
+     */
+    void ensureCapacity(long maximum) {
+        int capacity = capacityOf(maximum);
+        if (capacity > table.length) {
+            resize(capacity);
+        }
+    }
+
+    private void resize(int capacity) {
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+        this.size = 0;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the key, up to the maximum(15)
+     *
+     * @param key the key
+     * @return the estimated frequency
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the popularity of the key if it does not exceed the maximum(15)
+     *
+     * @param key the key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && (++size == sampleSize)) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int capacityOf(long maximum) {
+        return ceilingPowerOfTwo((int) Math.min(Math.max(maximum, MINIMUM_CAPACITY), MAXIMUM_CAPACITY));
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
@@ -0,0 +1,334 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interner canonicalizes the equal instances to one instance, likes String.intern but it is local and works for any
+ * immutable type whose equals and hashCode are consistent:
+ * <pre>
+ *     Interner&lt;String&gt; countryCodes = Interner.&lt;String&gt;builder().build();
+ *     order.setCountry(countryCodes.intern(decoded.getCountry()));
+ * </pre>
+ * The canonical instances are referenced weakly by default, so they are reclaimed once nobody uses them, or softly so
+ * they survive until GC needs the memory. The table is a ConcurrentHashMap of the references, the lookup of an
+ * interned instance never locks, and the collected references are removed by ReferenceReaper in bounded batches which
+ * is the same as SoftConcurrentHashMap.
+ * <p>
+ * The dedupRatio tells how many interned instances were duplicates, which is the share of instances that the interner
+ * has saved from being retained.
+ *
+ * @param <T> the type of instance
+ * @author xasync.com
+ */
+public final class Interner<T> {
+    private final static int DEFAULT_RECLAIM_BATCH_SIZE = 64;
+
+    /**
+     * The table whose keys and values are the same references of the canonical instances
+     */
+    private final ConcurrentHashMap<Object, Interned<T>> table;
+
+    /**
+     * Declares the instance of ReferenceQueue for observing which canonical instances have been collected by GC
+     */
+    private final ReferenceQueue<T> referenceQueue = new ReferenceQueue<>();
+
+    private final ReferenceStrength strength;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    private Interner(Builder<T> builder) {
+        this.table = new ConcurrentHashMap<>(builder.initialCapacity);
+        this.strength = builder.strength;
+        ReferenceReaper.register(this, Interner::reclaim, DEFAULT_RECLAIM_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a builder, the canonical instances are referenced weakly by default.
+     *
+     * @param <T> the type of instance
+     * @return Builder
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Returns the canonical instance which equals the sample, the sample becomes the canonical instance if there is
+     * no live one.
+     *
+     * @param sample the sample, non-null
+     * @return the canonical instance
+     */
+    public T intern(T sample) {
+        Objects.requireNonNull(sample, "requires a non-null sample");
+        requests.increment();
+        LookupKey lookup = new LookupKey(sample);
+        while (true) {
+            Interned<T> existing = table.get(lookup);
+            if (Objects.isNull(existing)) {
+                Interned<T> created = newInterned(sample);
+                existing = table.putIfAbsent(created, created);
+                if (Objects.isNull(existing)) {
+                    return sample;
+                }
+            }
+            T canonical = existing.get();
+            if (Objects.nonNull(canonical)) {
+                duplicates.increment();
+                return canonical;
+            }
+            //the canonical instance has been collected, and its reference only equals itself
+            table.remove(existing, existing);
+        }
+    }
+
+    /**
+     * Returns the number of canonical instances, it includes the ones collected but not reclaimed yet.
+     *
+     * @return the number of canonical instances
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Returns the number of intern calls
+     *
+     * @return the number of intern calls
+     */
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the number of intern calls whose sample is a duplicate of a canonical instance
+     *
+     * @return the number of duplicates
+     */
+    public long duplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Returns the ratio of duplicates to intern calls, it is 0.0 if intern is never called
+     *
+     * @return the ratio in [0.0, 1.0]
+     */
+    public double dedupRatio() {
+        long requestCount = requestCount();
+        return requestCount == 0 ? 0.0 : (double) duplicateCount() / requestCount;
+    }
+
+    /**
+     * Returns the strength of the references to the canonical instances
+     *
+     * @return ReferenceStrength
+     */
+    public ReferenceStrength strength() {
+        return strength;
+    }
+
+    private Interned<T> newInterned(T sample) {
+        return strength == ReferenceStrength.SOFT ? new SoftInterned<>(sample, referenceQueue)
+                : new WeakInterned<>(sample, referenceQueue);
+    }
+
+    /**
+     * Removes at most batchSize canonical instances which have been collected
+     *
+     * @param batchSize the maximum number of instances to remove
+     * @return true if there may be more instances to remove
+     */
+    private boolean reclaim(int batchSize) {
+        for (int i = 0; i < batchSize; i++) {
+            Reference<? extends T> collected = referenceQueue.poll();
+            if (Objects.isNull(collected)) {
+                return false;
+            }
+            table.remove(collected, collected);
+        }
+        return true;
+    }
+
+    /**
+     * Compares an interned reference with another reference or a LookupKey by the equality of their instances, a
+     * cleared reference only equals itself.
+     */
+    private static boolean matches(Interned<?> interned, Object other) {
+        if (other == interned) {
+            return true;
+        }
+        Object instance = interned.get();
+        if (Objects.isNull(instance)) {
+            return false;
+        }
+        if (other instanceof Interned) {
+            return instance.equals(((Interned<?>) other).get());
+        }
+        return other instanceof LookupKey && instance.equals(((LookupKey) other).instance);
+    }
+
+    /**
+     * Builder is used to construct an Interner
+     *
+     * @param <T> the type of instance
+     */
+    public static final class Builder<T> {
+        private int initialCapacity = 16;
+        private ReferenceStrength strength = ReferenceStrength.WEAK;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of canonical instances you expect the interner to hold
+         *
+         * @param initialCapacity the initial capacity
+         * @return Builder
+         */
+        public Builder<T> initialCapacity(int initialCapacity) {
+            if (initialCapacity < 0) {
+                throw new IllegalArgumentException("the initialCapacity is negative: " + initialCapacity);
+            }
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the strength of the references to the canonical instances, it can't be STRONG because a strong
+         * interner never releases anything.
+         *
+         * @param strength the strength
+         * @return Builder
+         */
+        public Builder<T> strength(ReferenceStrength strength) {
+            Objects.requireNonNull(strength, "requires a non-null strength");
+            if (strength == ReferenceStrength.STRONG) {
+                throw new IllegalArgumentException("the canonical instances can't be referenced strongly, "
+                        + "use a ConcurrentHashMap instead of it");
+            }
+            this.strength = strength;
+            return this;
+        }
+
+        /**
+         * The canonical instances are referenced weakly, it is the default
+         *
+         * @return Builder
+         */
+        public Builder<T> weakReferences() {
+            return strength(ReferenceStrength.WEAK);
+        }
+
+        /**
+         * The canonical instances are referenced softly
+         *
+         * @return Builder
+         */
+        public Builder<T> softReferences() {
+            return strength(ReferenceStrength.SOFT);
+        }
+
+        /**
+         * Builds the Interner
+         *
+         * @return Interner
+         */
+        public Interner<T> build() {
+            return new Interner<>(this);
+        }
+    }
+
+    /**
+     * Interned references the canonical instance and keeps its hash after it is collected
+     *
+     * @param <T> the type of instance
+     */
+    private interface Interned<T> {
+
+        T get();
+    }
+
+    private static class WeakInterned<T> extends WeakReference<T> implements Interned<T> {
+        private final int hash;
+
+        WeakInterned(T instance, ReferenceQueue<? super T> q) {
+            super(instance, q);
+            this.hash = instance.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return matches(this, other);
+        }
+    }
+
+    private static class SoftInterned<T> extends SoftReference<T> implements Interned<T> {
+        private final int hash;
+
+        SoftInterned(T instance, ReferenceQueue<? super T> q) {
+            super(instance, q);
+            this.hash = instance.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return matches(this, other);
+        }
+    }
+
+    /**
+     * LookupKey wraps the sample for looking up an Interned, it is never stored.
+     */
+    private static class LookupKey {
+        private final Object instance;
+        private final int hash;
+
+        LookupKey(Object instance) {
+            this.instance = instance;
+            this.hash = instance.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Interned && matches((Interned<?>) other, this);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.Objects;
+
+/**
+ * LongSoftConcurrentMap is a concurrent map whose keys are primitive longs and values are held softly. It provides the
+ * same putAsSoft/getOnSoft API as SoftConcurrentHashMap, but never boxes the keys.
+ * <p>
+ * The map is a SoftProbingTable which stores no keys: the hash of a key is a bijective mix of it, so equal hashes mean
+ * equal keys, and the reference remembers the primitive key for the iteration. The readers probe the table under an
+ * optimistic stamp of StampedLock, so that a lookup allocates nothing. The entries whose values have been collected by
+ * GC are removed by ReferenceReaper in bounded batches.
+ *
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+public class LongSoftConcurrentMap<V> {
+    private final static int DEFAULT_CAPACITY = 16;
+    private final static int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private final static int RECLAIM_BATCH_SIZE = 64;
+
+    private final SoftProbingTable<V> table;
+
+    /**
+     * Non-parameter constructor
+     */
+    public LongSoftConcurrentMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create an instance with the initial capacity you expect
+     *
+     * @param initialCapacity The number of elements you expect the container to hold
+     */
+    public LongSoftConcurrentMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Create an instance with the initial capacity and the number of concurrently updating threads you expect
+     *
+     * @param initialCapacity  The number of elements you expect the container to hold
+     * @param concurrencyLevel the estimated number of concurrently updating threads.
+     */
+    public LongSoftConcurrentMap(int initialCapacity, int concurrencyLevel) {
+        this.table = new SoftProbingTable<>(initialCapacity, concurrencyLevel, false);
+        ReferenceReaper.register(this, (map, batchSize) -> map.table.reclaim(batchSize), RECLAIM_BATCH_SIZE);
+    }
+
+    /**
+     * Maps the specified key to the specified value, the value will be held softly.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key, non-null
+     */
+    public void putAsSoft(long key, V value) {
+        Objects.requireNonNull(value, "requires a non-null value");
+        table.put(null, new LongSoftReference<>(key, value, table.referenceQueue()), false);
+    }
+
+    /**
+     * If the specified key is not associated with a value or its value has been collected by GC, associates it with
+     * the given value.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key, non-null
+     */
+    public void putAsSoftIfAbsent(long key, V value) {
+        Objects.requireNonNull(value, "requires a non-null value");
+        table.put(null, new LongSoftReference<>(key, value, table.referenceQueue()), true);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key or
+     * the value has been collected by GC.
+     *
+     * @param key key with which the specified value is to be associated
+     * @return the value
+     */
+    public V getOnSoft(long key) {
+        SoftProbingTable.Reference<V> ref = table.get(null, mix(key));
+        return Objects.nonNull(ref) ? ref.get() : null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or defaultValue if this map contains no mapping for the
+     * key.
+     *
+     * @param key          key with which the specified value is to be associated
+     * @param defaultValue the default value if this map contains no mapping for the key.
+     * @return the value
+     */
+    public V getOnSoftOrDefault(long key, V defaultValue) {
+        V value = getOnSoft(key);
+        return Objects.nonNull(value) ? value : defaultValue;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the key whose value is not collected.
+     *
+     * @param key the key
+     * @return true or false
+     */
+    public boolean containsKey(long key) {
+        return Objects.nonNull(getOnSoft(key));
+    }
+
+    /**
+     * Removes the mapping for the key
+     *
+     * @param key the key
+     * @return the previous value, or null if there is no mapping or the value has been collected
+     */
+    public V remove(long key) {
+        SoftProbingTable.Reference<V> ref = table.remove(null, mix(key));
+        return Objects.nonNull(ref) ? ref.get() : null;
+    }
+
+    /**
+     * Returns the number of mappings, it includes the mappings whose values are collected but not reclaimed yet.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Returns true if this map contains no mappings
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all of the mappings from this map
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Performs the given action for each mapping whose value is not collected, it is weakly consistent.
+     *
+     * @param action the action
+     */
+    public void forEachOnSoft(LongEntryConsumer<? super V> action) {
+        Objects.requireNonNull(action, "requires a non-null action");
+        table.forEach((key, ref, value) -> action.accept(((LongSoftReference<V>) ref).key, value));
+    }
+
+    /**
+     * Mixes the key into its hash, both steps are bijective so the hash identifies the key
+     */
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * LongEntryConsumer accepts a mapping of LongSoftConcurrentMap without boxing the key
+     *
+     * @param <V> the type of value
+     */
+    @FunctionalInterface
+    public interface LongEntryConsumer<V> {
+
+        /**
+         * Performs this operation on the given mapping
+         *
+         * @param key   the key
+         * @param value the value
+         */
+        void accept(long key, V value);
+    }
+
+    /**
+     * LongSoftReference holds the value softly and remembers the primitive key
+     *
+     * @param <V> the type of value
+     */
+    private static class LongSoftReference<V> extends SoftProbingTable.Reference<V> {
+        private final long key;
+
+        LongSoftReference(long key, V value, ReferenceQueue<? super V> q) {
+            super(value, q);
+            this.key = key;
+        }
+
+        @Override
+        long hash() {
+            return mix(key);
+        }
+    }
+}
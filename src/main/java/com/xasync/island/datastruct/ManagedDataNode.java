@@ -0,0 +1,173 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * ManagedDataNode is the SoftDataNode used by a SoftConcurrentHashMap which is created by the builder, it carries the
+ * bookkeeping fields required by the optional features so that the plain map keeps the lean node.
+ * <p>
+ * Each group of fields is guarded by the component which owns it, the fields of other components are never touched.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+class ManagedDataNode<K, V> extends SoftConcurrentHashMap.SoftDataNode<K, V> {
+    final static int QUEUE_NONE = 0;
+    final static int QUEUE_WINDOW = 1;
+    final static int QUEUE_PROBATION = 2;
+    final static int QUEUE_PROTECTED = 3;
+
+    private final static int MAX_HITS = 1 << 16;
+
+    @SuppressWarnings("rawtypes")
+    private final static AtomicIntegerFieldUpdater<ManagedDataNode> REFRESHING =
+            AtomicIntegerFieldUpdater.newUpdater(ManagedDataNode.class, "refreshing");
+
+    /**
+     * The weight calculated by the weigher when the node is created
+     */
+    final int weight;
+
+    /**
+     * The queue in which the node is linked, guarded by the lock of TinyLfuPolicy
+     */
+    int queueType = QUEUE_NONE;
+
+    /**
+     * The links of access order deque, guarded by the lock of TinyLfuPolicy
+     */
+    ManagedDataNode<K, V> prev;
+    ManagedDataNode<K, V> next;
+
+    /**
+     * The time when the node is created, in nanoseconds
+     */
+    long writeTime;
+
+    /**
+     * The time when the node is read lastly, in nanoseconds
+     */
+    volatile long accessTime;
+
+    /**
+     * The time since which the refreshAfterWrite is counted, in nanoseconds. It is the writeTime unless a refreshing
+     * has failed, and then it is the time of the failure, so the next refreshing waits for a whole interval.
+     */
+    volatile long refreshTime;
+
+    /**
+     * The generation of the map when the node is created, the node is stale once the map is invalidated entirely
+     */
+    int generation;
+
+    /**
+     * The tags attached to the node, it is null if the node is untagged
+     */
+    Object[] tags;
+
+    /**
+     * The links of the bucket in TimerWheel, guarded by the lock of TimerWheel
+     */
+    ManagedDataNode<K, V> prevInTimer;
+    ManagedDataNode<K, V> nextInTimer;
+
+    /**
+     * Whether the node is being refreshed, 1 means true. A refreshed value is installed as a new node, so the flag of
+     * a node is never cleared unless the refreshing fails or is rejected.
+     */
+    private volatile int refreshing;
+
+    /**
+     * The value pinned by StrongHotSet, it keeps the value strongly reachable while the node is hot
+     */
+    private volatile V pinned;
+
+    /**
+     * The number of hits recorded by StrongHotSet and the epoch when it is updated, they are updated racily because
+     * they are only a hint
+     */
+    private int hits;
+    private int hitsEpoch;
+
+    ManagedDataNode(K index, V data, ReferenceQueue<? super V> q, int weight) {
+        super(index, data, q);
+        this.weight = weight;
+    }
+
+    /**
+     * Marks the node as being refreshed
+     *
+     * @return true if the caller wins the refreshing
+     */
+    boolean startRefreshing() {
+        return refreshing == 0 && REFRESHING.compareAndSet(this, 0, 1);
+    }
+
+    void stopRefreshing() {
+        refreshing = 0;
+    }
+
+    /**
+     * Stops the failed refreshing, and the next one starts after the interval has elapsed since now
+     *
+     * @param now the time of the failure
+     */
+    void failRefreshing(long now) {
+        refreshTime = now;
+        refreshing = 0;
+    }
+
+    boolean hasTag(Object tag) {
+        if (tags == null) {
+            return false;
+        }
+        for (Object each : tags) {
+            if (each.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void pin(V value) {
+        pinned = value;
+    }
+
+    void unpin() {
+        pinned = null;
+    }
+
+    boolean isPinned() {
+        return pinned != null;
+    }
+
+    void recordHit(int epoch) {
+        int aged = hits(epoch);
+        hits = aged < MAX_HITS ? aged + 1 : aged;
+        hitsEpoch = epoch;
+    }
+
+    /**
+     * Returns the hits which are halved for each epoch since they were updated
+     */
+    int hits(int epoch) {
+        return hits >>> Math.min(31, epoch - hitsEpoch);
+    }
+}
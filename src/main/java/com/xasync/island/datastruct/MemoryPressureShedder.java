@@ -0,0 +1,184 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemoryPressureShedder sheds the coldest entries of the registered maps before the old generation fills up, so the
+ * soft references needn't be cleared all at once by a full GC.
+ * <p>
+ * It listens to the usage threshold and the collection usage threshold of the heap pools which support them (the old
+ * generation of the common collectors). The thresholds are global to the JVM and may be owned by the application or
+ * its monitoring, so they are never set unless a map opts in by installThresholds, which only sets the unset ones.
+ * Each threshold notification only wakes up a daemon thread, which runs at most one shedding round every 200ms and
+ * removes 5% of the entries of each map in a round, the ones accessed least recently first. The collection usage
+ * threshold is notified after every collection which leaves the pool above the threshold, so the shedding goes on
+ * gradually until the heap recovers.
+ * <p>
+ * The maps are held weakly, the registration is dropped automatically after the map is collected.
+ *
+ * @author xasync.com
+ */
+final class MemoryPressureShedder {
+    private final static double SHED_RATIO = 0.05;
+    private final static long MIN_ROUND_INTERVAL_MILLIS = 200;
+
+    private final static List<WeakReference<SoftConcurrentHashMap<?, ?>>> MAPS = new CopyOnWriteArrayList<>();
+
+    /**
+     * The permits released by the threshold notifications
+     */
+    private final static Semaphore PRESSURE = new Semaphore(0);
+
+    private static volatile Thread DAEMON;
+
+    private MemoryPressureShedder() {
+    }
+
+    /**
+     * Registers a map whose entries are shed under memory pressure, the map must record the access time of nodes.
+     *
+     * @param map the map
+     */
+    static void register(SoftConcurrentHashMap<?, ?> map) {
+        Objects.requireNonNull(map, "requires a non-null map");
+        MAPS.add(new WeakReference<>(map));
+        if (Objects.isNull(DAEMON)) {
+            start();
+        }
+    }
+
+    /**
+     * Sets the usage threshold and the collection usage threshold of the heap pools to ratio of their maximum, unless
+     * they have been set by the application or an earlier call.
+     *
+     * @param ratio the ratio of the maximum of each pool, between 0 and 1 exclusively
+     */
+    static synchronized void installThresholds(double ratio) {
+        if (!(ratio > 0 && ratio < 1)) {
+            throw new IllegalArgumentException("the threshold ratio must be between 0 and 1: " + ratio);
+        }
+        for (MemoryPoolMXBean pool : heapPools()) {
+            long threshold = (long) (pool.getUsage().getMax() * ratio);
+            if (pool.getUsageThreshold() == 0) {
+                pool.setUsageThreshold(threshold);
+            }
+            if (pool.isCollectionUsageThresholdSupported() && pool.getCollectionUsageThreshold() == 0) {
+                pool.setCollectionUsageThreshold(threshold);
+            }
+        }
+    }
+
+    /**
+     * Runs a shedding round on all registered maps
+     *
+     * @return the number of entries shed
+     */
+    static long shedRound() {
+        long shed = 0;
+        for (WeakReference<SoftConcurrentHashMap<?, ?>> ref : MAPS) {
+            SoftConcurrentHashMap<?, ?> map = ref.get();
+            if (Objects.isNull(map)) {
+                MAPS.remove(ref);
+                continue;
+            }
+            shed += shedRound(map);
+        }
+        return shed;
+    }
+
+    /**
+     * Runs a shedding round on the map, it sheds 5% of its entries
+     *
+     * @param map the map
+     * @return the number of entries shed
+     */
+    static int shedRound(SoftConcurrentHashMap<?, ?> map) {
+        return map.shed((int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(map.mappingCount() * SHED_RATIO)));
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && pool.getUsage().getMax() > 0) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    private static synchronized void start() {
+        if (Objects.nonNull(DAEMON)) {
+            return;
+        }
+        List<String> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : heapPools()) {
+            pools.add(pool.getName());
+        }
+        NotificationListener listener = (Notification notification, Object handback) -> {
+            String type = notification.getType();
+            if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                    || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+                PRESSURE.release();
+            }
+        };
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener,
+                notification -> pools.contains(MemoryNotificationInfo.from(
+                        (CompositeData) notification.getUserData()).getPoolName()),
+                null);
+        Thread daemon = new Thread(MemoryPressureShedder::loop, "island-memory-shedder");
+        daemon.setDaemon(true);
+        daemon.start();
+        DAEMON = daemon;
+    }
+
+    private static void loop() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(MIN_ROUND_INTERVAL_MILLIS);
+        long lastRound = System.nanoTime() - interval;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                PRESSURE.acquire();
+                PRESSURE.drainPermits();
+                long wait = lastRound + interval - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                shedRound();
+                lastRound = System.nanoTime();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable ex) {
+                Thread daemon = Thread.currentThread();
+                daemon.getUncaughtExceptionHandler().uncaughtException(daemon, ex);
+            }
+        }
+    }
+}
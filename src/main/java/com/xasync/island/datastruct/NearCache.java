@@ -0,0 +1,163 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * NearCache is a small per-thread cache of the nodes of SoftConcurrentHashMap in front of the shared table, so that
+ * the repeated reads of a hot key by a thread never touch the shared table.
+ * <p>
+ * Each thread has a direct-mapped array of slots, and each slot remembers the stamp of the stripe of its key when it
+ * was filled. A write or removal of a key advances the stamp of its stripe after the table is modified, and a reader
+ * takes the stamp before it reads the table, so a slot filled by a stale read is always invalidated. The stripes are
+ * padded from each other, so a reader only shares the cache line of the stripe of its key, which is only written when
+ * a key of the stripe is modified.
+ * <p>
+ * The slots are owned by the thread, a virtual thread has its own slots rather than the slots of its carrier thread.
+ * They hold the nodes weakly and a slot found stale is cleared, so a node removed from the map is never kept
+ * reachable by the slots of a pooled thread.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+final class NearCache<K, V> {
+    private final static int STRIPES = 64;
+
+    /**
+     * The stamps are 64 bytes apart, so that each stripe has its own cache line
+     */
+    private final static int STRIDE = 16;
+
+    /**
+     * One of the near hits is replayed to the map, so that the hot keys are still hot for the policy
+     */
+    private final static int REPLAY_RATE = 16;
+
+    private final AtomicIntegerArray stamps = new AtomicIntegerArray(STRIPES * STRIDE);
+    private final ThreadLocal<Slots<K, V>> slots;
+
+    NearCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("the capacity of near cache must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.min(capacity, 1 << 30));
+        int length = size < capacity ? size << 1 : size;
+        this.slots = ThreadLocal.withInitial(() -> new Slots<>(length));
+    }
+
+    /**
+     * Returns the node cached by the current thread if its stripe isn't modified since it was cached
+     *
+     * @param key the key
+     * @return the node, or null if the key isn't cached
+     */
+    SoftConcurrentHashMap.SoftDataNode<K, V> get(Object key) {
+        int hash = hash(key);
+        Slots<K, V> local = slots.get();
+        int index = hash & local.mask;
+        WeakReference<SoftConcurrentHashMap.SoftDataNode<K, V>> ref = local.nodes[index];
+        if (Objects.isNull(ref)) {
+            return null;
+        }
+        SoftConcurrentHashMap.SoftDataNode<K, V> node = ref.get();
+        if (Objects.isNull(node) || local.stamps[index] != stamps.get(stripeOf(hash))) {
+            local.nodes[index] = null;
+            return null;
+        }
+        return key.equals(node.getIndex()) ? node : null;
+    }
+
+    /**
+     * Returns the stamp of the stripe of key, it must be taken before the node to cache is read
+     *
+     * @param key the key
+     * @return the stamp
+     */
+    int stamp(Object key) {
+        return stamps.get(stripeOf(hash(key)));
+    }
+
+    /**
+     * Caches the node for the current thread
+     *
+     * @param node  the node
+     * @param stamp the stamp taken before the node is read
+     */
+    void put(SoftConcurrentHashMap.SoftDataNode<K, V> node, int stamp) {
+        Slots<K, V> local = slots.get();
+        int index = hash(node.getIndex()) & local.mask;
+        local.nodes[index] = new WeakReference<>(node);
+        local.stamps[index] = stamp;
+    }
+
+    /**
+     * Invalidates the key cached by any thread, it must be called after the key is modified
+     *
+     * @param key the key
+     */
+    void invalidate(Object key) {
+        stamps.incrementAndGet(stripeOf(hash(key)));
+    }
+
+    void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            stamps.incrementAndGet(i * STRIDE);
+        }
+    }
+
+    /**
+     * Decides whether a near hit should be replayed to the map, it is decided by a thread-local random so the readers
+     * never contend on a counter
+     *
+     * @return true for about one of 16 hits
+     */
+    boolean shouldReplay() {
+        return ThreadLocalRandom.current().nextInt(REPLAY_RATE) == 0;
+    }
+
+    private static int stripeOf(int hash) {
+        return (hash >>> 26) * STRIDE;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Slots holds the nodes cached by a thread weakly and the stamps when they are cached
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    private static class Slots<K, V> {
+        private final WeakReference<SoftConcurrentHashMap.SoftDataNode<K, V>>[] nodes;
+        private final int[] stamps;
+        private final int mask;
+
+        @SuppressWarnings("unchecked")
+        Slots(int length) {
+            this.nodes = (WeakReference<SoftConcurrentHashMap.SoftDataNode<K, V>>[]) new WeakReference<?>[length];
+            this.stamps = new int[length];
+            this.mask = length - 1;
+        }
+    }
+}
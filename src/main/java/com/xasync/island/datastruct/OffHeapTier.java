@@ -0,0 +1,275 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * OffHeapTier keeps the encoded values of SoftConcurrentHashMap in direct ByteBuffers, so the values which are
+ * collected by GC or evicted from the heap can be promoted without reloading them.
+ * <p>
+ * The buffers are split into slabs which are written as a log: each record is appended to the current slab, and an
+ * overwritten or invalidated record stays as garbage until its slab is recycled. When all slabs are full, the oldest
+ * slab is recycled and the records in it are dropped, so the tier is bounded by its capacity and evicts in FIFO order.
+ * <p>
+ * The appends are serialized by appendLock. A reader copies a record under an optimistic stamp of recycleLock and
+ * retries with the read lock if a slab is recycled meanwhile, so it never blocks the appends. The tier never calls
+ * back into the map.
+ * <p>
+ * The address of a record carries the cycle of its slab, so it is never reused until the cycles wrap around. The map
+ * appends and decodes the records outside the lock of the key, and checks under the lock by isLatest() that the record
+ * hasn't been overwritten or invalidated meanwhile.
+ *
+ * @param <K> the type of key
+ * @author xasync.com
+ */
+class OffHeapTier<K> {
+    private final static int DEFAULT_SLAB_COUNT = 16;
+
+    /**
+     * The address returned when the bytes aren't appended
+     */
+    final static long NO_ADDRESS = -1L;
+
+    /**
+     * The layout of address: the cycle of slab, the slab and the offset in it from the high bits to the low bits
+     */
+    private final static int OFFSET_BITS = 31;
+    private final static int SLAB_BITS = 4;
+    private final static int CYCLE_MASK = (1 << 28) - 1;
+
+    /**
+     * The record header: the length of bytes and the write time
+     */
+    private final static int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+
+    /**
+     * The keys appended to each slab, they are used to drop the index when the slab is recycled
+     */
+    private final List<List<K>> slabKeys;
+
+    /**
+     * The address of the latest record of each key
+     */
+    private final ConcurrentHashMap<K, Long> index = new ConcurrentHashMap<>();
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final StampedLock recycleLock = new StampedLock();
+
+    /**
+     * The slab which is appended currently and its write position, guarded by appendLock
+     */
+    private int currentSlab;
+    private int position;
+
+    /**
+     * The number of times each slab has been recycled, guarded by appendLock
+     */
+    private final int[] cycles;
+
+    OffHeapTier(long capacity) {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("the capacity of off-heap tier is too small: " + capacity);
+        }
+        int slabCount = (int) Math.max(1, Math.min(DEFAULT_SLAB_COUNT, capacity / (HEADER_SIZE * 64)));
+        this.slabSize = (int) Math.min(Integer.MAX_VALUE, capacity / slabCount);
+        this.slabs = new ByteBuffer[slabCount];
+        this.cycles = new int[slabCount];
+        this.slabKeys = new ArrayList<>(slabCount);
+        for (int i = 0; i < slabCount; i++) {
+            slabKeys.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Appends the bytes of the key, it is skipped if the record is larger than a slab.
+     *
+     * @param key       the key
+     * @param bytes     the encoded value
+     * @param writeTime the time when the value is written, in nanoseconds
+     * @return the address of the record, or NO_ADDRESS if the bytes aren't appended
+     */
+    long write(K key, byte[] bytes, long writeTime) {
+        int recordSize = HEADER_SIZE + bytes.length;
+        if (recordSize > slabSize || recordSize < 0) {
+            index.remove(key);
+            return NO_ADDRESS;
+        }
+        appendLock.lock();
+        try {
+            if (Objects.isNull(slabs[currentSlab])) {
+                slabs[currentSlab] = ByteBuffer.allocateDirect(slabSize);
+            }
+            if (position + recordSize > slabSize) {
+                currentSlab = (currentSlab + 1) % slabs.length;
+                position = 0;
+                if (Objects.isNull(slabs[currentSlab])) {
+                    slabs[currentSlab] = ByteBuffer.allocateDirect(slabSize);
+                } else {
+                    recycle(currentSlab);
+                }
+            }
+            ByteBuffer slab = slabs[currentSlab].duplicate();
+            slab.position(position);
+            slab.putInt(bytes.length).putLong(writeTime).put(bytes);
+            slabKeys.get(currentSlab).add(key);
+            //publishes the record after it has been written completely
+            long address = ((long) cycles[currentSlab] << (OFFSET_BITS + SLAB_BITS))
+                    | ((long) currentSlab << OFFSET_BITS) | position;
+            index.put(key, address);
+            position += recordSize;
+            return address;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the latest record of the key
+     *
+     * @param key the key
+     * @return the record, or null if the key has no record
+     */
+    Record read(K key) {
+        long stamp = recycleLock.tryOptimisticRead();
+        Record record = copy(key);
+        if (recycleLock.validate(stamp)) {
+            return record;
+        }
+        stamp = recycleLock.readLock();
+        try {
+            return copy(key);
+        } finally {
+            recycleLock.unlockRead(stamp);
+        }
+    }
+
+    boolean contains(K key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Returns true if the record at the address is still the latest one of the key
+     *
+     * @param key     the key
+     * @param address the address returned by write() or carried by a record
+     * @return true or false
+     */
+    boolean isLatest(K key, long address) {
+        Long latest = index.get(key);
+        return Objects.nonNull(latest) && latest == address;
+    }
+
+    void invalidate(K key) {
+        index.remove(key);
+    }
+
+    /**
+     * Invalidates the record of the key only if it is still the one at the address
+     *
+     * @param key     the key
+     * @param address the address of record
+     */
+    void invalidate(K key, long address) {
+        index.remove(key, address);
+    }
+
+    void clear() {
+        appendLock.lock();
+        try {
+            index.clear();
+            for (List<K> keys : slabKeys) {
+                keys.clear();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of keys which have a record
+     *
+     * @return the size
+     */
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Drops the index of the records in the slab, it is called with appendLock held.
+     */
+    private void recycle(int slab) {
+        long stamp = recycleLock.writeLock();
+        try {
+            for (K key : slabKeys.get(slab)) {
+                index.computeIfPresent(key, (k, address) -> slabOf(address) == slab ? null : address);
+            }
+            slabKeys.get(slab).clear();
+            cycles[slab] = (cycles[slab] + 1) & CYCLE_MASK;
+        } finally {
+            recycleLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copies the record, the result is garbage if the slab is recycled concurrently and the caller validates it.
+     */
+    private Record copy(K key) {
+        Long address = index.get(key);
+        if (Objects.isNull(address)) {
+            return null;
+        }
+        ByteBuffer slab = slabs[slabOf(address)].duplicate();
+        int offset = (int) (address & ((1L << OFFSET_BITS) - 1));
+        int length = slab.getInt(offset);
+        if (length < 0 || length > slabSize - offset - HEADER_SIZE) {
+            return null;
+        }
+        long writeTime = slab.getLong(offset + Integer.BYTES);
+        byte[] bytes = new byte[length];
+        slab.position(offset + HEADER_SIZE);
+        slab.get(bytes);
+        return new Record(bytes, writeTime, address);
+    }
+
+    private static int slabOf(long address) {
+        return (int) (address >>> OFFSET_BITS) & ((1 << SLAB_BITS) - 1);
+    }
+
+    /**
+     * Record is a copy of the record in the slab
+     */
+    static final class Record {
+        final byte[] bytes;
+        final long writeTime;
+        final long address;
+
+        Record(byte[] bytes, long writeTime, long address) {
+            this.bytes = bytes;
+            this.writeTime = writeTime;
+            this.address = address;
+        }
+    }
+}
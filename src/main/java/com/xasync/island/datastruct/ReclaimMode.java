@@ -0,0 +1,34 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+/**
+ * ReclaimMode decides who removes the nodes whose referents have been collected by GC.
+ *
+ * @author xasync.com
+ */
+public enum ReclaimMode {
+
+    /**
+     * The shared daemon thread of ReferenceReaper removes the collected nodes in bounded batches.
+     */
+    BACKGROUND,
+
+    /**
+     * Each write removes a bounded batch of the collected nodes, it doesn't need any thread.
+     */
+    ON_WRITE
+}
@@ -0,0 +1,529 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * ReferenceConcurrentMap is a concurrent map whose keys and values are referenced with the configurable strength,
+ * likes:
+ * <pre>
+ *     // the metadata is dropped after the ClassLoader is collected, and never pins it
+ *     ReferenceConcurrentMap&lt;ClassLoader, Metadata&gt; metadata = ReferenceConcurrentMap.&lt;ClassLoader, Metadata&gt;builder()
+ *          .weakKeys()
+ *          .build();
+ *     // the canonical instances are dropped once nobody uses them
+ *     ReferenceConcurrentMap&lt;String, Currency&gt; currencies = ReferenceConcurrentMap.&lt;String, Currency&gt;builder()
+ *          .weakValues()
+ *          .build();
+ * </pre>
+ * The weak keys are compared by identity(==) rather than equals, and the value must not reference its key strongly,
+ * otherwise the key is never collected. All collected keys and values are observed by one ReferenceQueue and removed
+ * by ReferenceReaper in bounded batches, which is the same as SoftConcurrentHashMap.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+public class ReferenceConcurrentMap<K, V> {
+    private final static int DEFAULT_RECLAIM_BATCH_SIZE = 64;
+
+    /**
+     * The delegate whose keys are the keys or KeyReferences
+     */
+    private final ConcurrentHashMap<Object, ValueReference<V>> delegate;
+
+    /**
+     * Declares the instance of ReferenceQueue for observing which keys and values have been collected by GC
+     */
+    private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+
+    private final ReferenceStrength keyStrength;
+    private final ReferenceStrength valueStrength;
+    private final ReclaimMode reclaimMode;
+    private final int reclaimBatchSize;
+
+    /**
+     * Creates an instance by the builder
+     *
+     * @param builder the builder
+     */
+    private ReferenceConcurrentMap(Builder<K, V> builder) {
+        this.delegate = new ConcurrentHashMap<>(builder.initialCapacity);
+        this.keyStrength = builder.keyStrength;
+        this.valueStrength = builder.valueStrength;
+        this.reclaimMode = builder.reclaimMode;
+        this.reclaimBatchSize = builder.reclaimBatchSize;
+        if (reclaimMode == ReclaimMode.BACKGROUND) {
+            ReferenceReaper.register(this, ReferenceConcurrentMap::reclaim, reclaimBatchSize);
+        }
+    }
+
+    /**
+     * Creates a builder, the keys and values are referenced strongly by default.
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     * @return Builder
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Maps the specified key to the specified value, neither the key nor the value can be null.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value, or null if there is no mapping or it has been collected
+     */
+    public V put(K key, V value) {
+        Objects.requireNonNull(value, "requires a non-null value");
+        Object storedKey = storedKey(key);
+        ValueReference<V> old = delegate.put(storedKey, newValueReference(storedKey, value));
+        afterWrite();
+        return Objects.nonNull(old) ? old.get() : null;
+    }
+
+    /**
+     * If the specified key is not associated with a value or its value has been collected, associates it with the
+     * given value.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the current value, it is the given value if it is associated
+     */
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(value, "requires a non-null value");
+        return computeIfAbsent(key, k -> value);
+    }
+
+    /**
+     * If the specified key is not associated with a value or its value has been collected, computes its value by the
+     * mappingFunction and associates it atomically.
+     *
+     * @param key             key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value, nothing is associated if it returns null
+     * @return the current (existing or computed) value, or null if the computed value is null
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction, "requires a non-null mappingFunction");
+        V value = get(key);
+        if (Objects.nonNull(value)) {
+            return value;
+        }
+        Object[] winner = new Object[1];
+        delegate.compute(storedKey(key), (storedKey, old) -> {
+            V existing = Objects.nonNull(old) ? old.get() : null;
+            if (Objects.nonNull(existing)) {
+                winner[0] = existing;
+                return old;
+            }
+            V computed = mappingFunction.apply(key);
+            winner[0] = computed;
+            return Objects.nonNull(computed) ? newValueReference(storedKey, computed) : null;
+        });
+        afterWrite();
+        @SuppressWarnings("unchecked")
+        V result = (V) winner[0];
+        return result;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or null if there is no mapping or it has been collected.
+     *
+     * @param key the key
+     * @return the value
+     */
+    public V get(K key) {
+        ValueReference<V> ref = delegate.get(lookupKey(key));
+        return Objects.nonNull(ref) ? ref.get() : null;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the key whose value is not collected.
+     *
+     * @param key the key
+     * @return true or false
+     */
+    public boolean containsKey(K key) {
+        return Objects.nonNull(get(key));
+    }
+
+    /**
+     * Removes the mapping for the key
+     *
+     * @param key the key
+     * @return the previous value, or null if there is no mapping or it has been collected
+     */
+    public V remove(K key) {
+        ValueReference<V> old = delegate.remove(lookupKey(key));
+        return Objects.nonNull(old) ? old.get() : null;
+    }
+
+    /**
+     * Returns the number of mappings, it includes the mappings which are collected but not reclaimed yet.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return delegate.size();
+    }
+
+    /**
+     * Returns true if this map contains no mappings
+     *
+     * @return true or false
+     */
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    /**
+     * Removes all of the mappings from this map
+     */
+    public void clear() {
+        delegate.clear();
+    }
+
+    /**
+     * Performs the given action for each mapping whose key and value are not collected, it is weakly consistent.
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action, "requires a non-null action");
+        delegate.forEach((storedKey, ref) -> {
+            K key = storedKey instanceof KeyReference ? ((KeyReference<K>) storedKey).get() : (K) storedKey;
+            V value = ref.get();
+            if (Objects.nonNull(key) && Objects.nonNull(value)) {
+                action.accept(key, value);
+            }
+        });
+    }
+
+    /**
+     * Returns the strength of keys
+     *
+     * @return ReferenceStrength
+     */
+    public ReferenceStrength keyStrength() {
+        return keyStrength;
+    }
+
+    /**
+     * Returns the strength of values
+     *
+     * @return ReferenceStrength
+     */
+    public ReferenceStrength valueStrength() {
+        return valueStrength;
+    }
+
+    private void afterWrite() {
+        if (reclaimMode == ReclaimMode.ON_WRITE) {
+            reclaim(reclaimBatchSize);
+        }
+    }
+
+    /**
+     * Removes at most batchSize mappings whose keys or values have been collected
+     *
+     * @param batchSize the maximum number of mappings to remove
+     * @return true if there may be more mappings to remove
+     */
+    private boolean reclaim(int batchSize) {
+        for (int i = 0; i < batchSize; i++) {
+            Reference<?> collected = referenceQueue.poll();
+            if (Objects.isNull(collected)) {
+                return false;
+            }
+            if (collected instanceof KeyReference) {
+                //a cleared KeyReference only equals itself
+                delegate.remove(collected);
+            } else {
+                ValueReference<?> ref = (ValueReference<?>) collected;
+                delegate.remove(ref.storedKey(), ref);
+            }
+        }
+        return true;
+    }
+
+    private Object storedKey(K key) {
+        Objects.requireNonNull(key, "requires a non-null key");
+        return keyStrength == ReferenceStrength.WEAK ? new KeyReference<>(key, referenceQueue) : key;
+    }
+
+    private Object lookupKey(K key) {
+        Objects.requireNonNull(key, "requires a non-null key");
+        return keyStrength == ReferenceStrength.WEAK ? new LookupKey(key) : key;
+    }
+
+    private ValueReference<V> newValueReference(Object storedKey, V value) {
+        switch (valueStrength) {
+            case SOFT:
+                return new SoftValueReference<>(storedKey, value, referenceQueue);
+            case WEAK:
+                return new WeakValueReference<>(storedKey, value, referenceQueue);
+            default:
+                return new StrongValueReference<>(storedKey, value);
+        }
+    }
+
+    /**
+     * Builder is used to construct a ReferenceConcurrentMap
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    public static final class Builder<K, V> {
+        private int initialCapacity = 16;
+        private ReferenceStrength keyStrength = ReferenceStrength.STRONG;
+        private ReferenceStrength valueStrength = ReferenceStrength.STRONG;
+        private ReclaimMode reclaimMode = ReclaimMode.BACKGROUND;
+        private int reclaimBatchSize = DEFAULT_RECLAIM_BATCH_SIZE;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of elements you expect the container to hold
+         *
+         * @param initialCapacity the initial capacity
+         * @return Builder
+         */
+        public Builder<K, V> initialCapacity(int initialCapacity) {
+            if (initialCapacity < 0) {
+                throw new IllegalArgumentException("the initialCapacity is negative: " + initialCapacity);
+            }
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the strength of keys, the keys can't be referenced softly.
+         *
+         * @param keyStrength the strength
+         * @return Builder
+         */
+        public Builder<K, V> keyStrength(ReferenceStrength keyStrength) {
+            Objects.requireNonNull(keyStrength, "requires a non-null keyStrength");
+            if (keyStrength == ReferenceStrength.SOFT) {
+                throw new IllegalArgumentException("the keys can't be referenced softly, use weakKeys instead of it");
+            }
+            this.keyStrength = keyStrength;
+            return this;
+        }
+
+        /**
+         * Sets the strength of values
+         *
+         * @param valueStrength the strength
+         * @return Builder
+         */
+        public Builder<K, V> valueStrength(ReferenceStrength valueStrength) {
+            this.valueStrength = Objects.requireNonNull(valueStrength, "requires a non-null valueStrength");
+            return this;
+        }
+
+        /**
+         * The keys are referenced weakly and compared by identity
+         *
+         * @return Builder
+         */
+        public Builder<K, V> weakKeys() {
+            return keyStrength(ReferenceStrength.WEAK);
+        }
+
+        /**
+         * The values are referenced weakly
+         *
+         * @return Builder
+         */
+        public Builder<K, V> weakValues() {
+            return valueStrength(ReferenceStrength.WEAK);
+        }
+
+        /**
+         * The values are referenced softly
+         *
+         * @return Builder
+         */
+        public Builder<K, V> softValues() {
+            return valueStrength(ReferenceStrength.SOFT);
+        }
+
+        /**
+         * Sets who removes the mappings whose keys or values have been collected by GC, defaults BACKGROUND.
+         *
+         * @param reclaimMode the reclaim mode
+         * @return Builder
+         */
+        public Builder<K, V> reclaimMode(ReclaimMode reclaimMode) {
+            this.reclaimMode = Objects.requireNonNull(reclaimMode, "requires a non-null reclaimMode");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of collected mappings removed each time, defaults 64.
+         *
+         * @param reclaimBatchSize the batch size
+         * @return Builder
+         */
+        public Builder<K, V> reclaimBatchSize(int reclaimBatchSize) {
+            if (reclaimBatchSize <= 0) {
+                throw new IllegalArgumentException("the reclaimBatchSize must be positive: " + reclaimBatchSize);
+            }
+            this.reclaimBatchSize = reclaimBatchSize;
+            return this;
+        }
+
+        /**
+         * Builds the ReferenceConcurrentMap
+         *
+         * @return ReferenceConcurrentMap
+         */
+        public ReferenceConcurrentMap<K, V> build() {
+            return new ReferenceConcurrentMap<>(this);
+        }
+    }
+
+    /**
+     * ValueReference references the value with a strength, and remembers its stored key for reclaiming.
+     *
+     * @param <V> the type of value
+     */
+    private interface ValueReference<V> {
+
+        V get();
+
+        Object storedKey();
+    }
+
+    private static class StrongValueReference<V> implements ValueReference<V> {
+        private final Object storedKey;
+        private final V value;
+
+        StrongValueReference(Object storedKey, V value) {
+            this.storedKey = storedKey;
+            this.value = value;
+        }
+
+        @Override
+        public V get() {
+            return value;
+        }
+
+        @Override
+        public Object storedKey() {
+            return storedKey;
+        }
+    }
+
+    private static class SoftValueReference<V> extends SoftReference<V> implements ValueReference<V> {
+        private final Object storedKey;
+
+        SoftValueReference(Object storedKey, V value, ReferenceQueue<Object> q) {
+            super(value, q);
+            this.storedKey = storedKey;
+        }
+
+        @Override
+        public Object storedKey() {
+            return storedKey;
+        }
+    }
+
+    private static class WeakValueReference<V> extends WeakReference<V> implements ValueReference<V> {
+        private final Object storedKey;
+
+        WeakValueReference(Object storedKey, V value, ReferenceQueue<Object> q) {
+            super(value, q);
+            this.storedKey = storedKey;
+        }
+
+        @Override
+        public Object storedKey() {
+            return storedKey;
+        }
+    }
+
+    /**
+     * KeyReference references the key weakly, it is compared by the identity of key and keeps the identity hash after
+     * the key is collected.
+     *
+     * @param <K> the type of key
+     */
+    private static class KeyReference<K> extends WeakReference<K> {
+        private final int hash;
+
+        KeyReference(K key, ReferenceQueue<Object> q) {
+            super(key, q);
+            this.hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+            Object key = get();
+            if (Objects.isNull(key)) {
+                return false;
+            }
+            if (other instanceof KeyReference) {
+                return key == ((KeyReference<?>) other).get();
+            }
+            return other instanceof LookupKey && key == ((LookupKey) other).key;
+        }
+    }
+
+    /**
+     * LookupKey wraps the key for looking up a KeyReference, it is never stored.
+     */
+    private static class LookupKey {
+        private final Object key;
+        private final int hash;
+
+        LookupKey(Object key) {
+            this.key = key;
+            this.hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof KeyReference && key == ((KeyReference<?>) other).get();
+        }
+    }
+}
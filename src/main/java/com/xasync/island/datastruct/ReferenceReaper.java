@@ -0,0 +1,186 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ReferenceReaper owns a shared daemon thread which removes the collected nodes of all registered owners in bounded
+ * batches, so that neither readers nor writers pay for draining the reference queues.
+ * <p>
+ * The owners are held weakly, the registration is dropped automatically after the owner is collected, and its
+ * release hook, if any, runs on the daemon then. The registrations are kept in a lock-free queue, so registering an
+ * owner costs O(1) however many owners are alive, and a dropped registration is unlinked in place by the daemon.
+ * While no owner has anything to reclaim, the daemon doubles its idle interval up to a second, and a new registration
+ * wakes it up.
+ *
+ * @author xasync.com
+ */
+final class ReferenceReaper {
+    /**
+     * The bounds of the interval of parking when all owners have nothing to reclaim
+     */
+    private final static long MIN_IDLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private final static long MAX_IDLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The maximum number of batches reclaimed from one owner in each round, so that one owner can't starve others
+     */
+    private final static int MAX_BATCHES_PER_ROUND = 16;
+
+    private final static Queue<Registration<?>> REGISTRATIONS = new ConcurrentLinkedQueue<>();
+
+    private static volatile Thread DAEMON = null;
+
+    private ReferenceReaper() {
+    }
+
+    /**
+     * Registers an owner whose collected nodes will be reclaimed by the daemon thread
+     *
+     * @param owner     the owner, likes SoftConcurrentHashMap
+     * @param task      the reclaim task of owner
+     * @param batchSize the maximum number of nodes reclaimed by the task each time
+     * @param <T>       the type of owner
+     */
+    static <T> void register(T owner, ReclaimTask<? super T> task, int batchSize) {
+        register(owner, task, batchSize, null);
+    }
+
+    /**
+     * Registers an owner whose collected nodes will be reclaimed by the daemon thread, and the release hook runs once
+     * after the owner is collected. The hook must not reference the owner, or else the owner is never collected.
+     *
+     * @param owner     the owner, likes SoftConcurrentHashMap
+     * @param task      the reclaim task of owner
+     * @param batchSize the maximum number of nodes reclaimed by the task each time
+     * @param release   the hook which releases the resources of owner outside the heap, nullable
+     * @param <T>       the type of owner
+     */
+    static <T> void register(T owner, ReclaimTask<? super T> task, int batchSize, Runnable release) {
+        Objects.requireNonNull(owner, "requires a non-null owner");
+        Objects.requireNonNull(task, "requires a non-null task");
+        REGISTRATIONS.add(new Registration<>(owner, task, batchSize, release));
+        startIfNecessary();
+        LockSupport.unpark(DAEMON);
+    }
+
+    private static void startIfNecessary() {
+        if (Objects.nonNull(DAEMON)) {
+            return;
+        }
+        synchronized (ReferenceReaper.class) {
+            if (Objects.isNull(DAEMON)) {
+                Thread daemon = new Thread(ReferenceReaper::loop, "island-reference-reaper");
+                daemon.setDaemon(true);
+                daemon.start();
+                DAEMON = daemon;
+            }
+        }
+    }
+
+    private static void loop() {
+        long idleInterval = MIN_IDLE_INTERVAL_NANOS;
+        while (!Thread.currentThread().isInterrupted()) {
+            boolean busy = false;
+            for (Iterator<Registration<?>> it = REGISTRATIONS.iterator(); it.hasNext(); ) {
+                Registration<?> registration = it.next();
+                try {
+                    int state = registration.reclaim();
+                    if (state < 0) {
+                        it.remove();
+                        registration.release();
+                    }
+                    busy |= state > 0;
+                } catch (Throwable ex) {
+                    //reports the failure without killing the daemon, the datastruct package doesn't depend on slf4j
+                    Thread daemon = Thread.currentThread();
+                    daemon.getUncaughtExceptionHandler().uncaughtException(daemon, ex);
+                }
+            }
+            if (busy) {
+                idleInterval = MIN_IDLE_INTERVAL_NANOS;
+                Thread.yield();
+            } else {
+                long parkedAt = System.nanoTime();
+                LockSupport.parkNanos(ReferenceReaper.class, idleInterval);
+                //unparked by a new registration, or the previous round was idle too
+                idleInterval = System.nanoTime() - parkedAt < idleInterval ? MIN_IDLE_INTERVAL_NANOS
+                        : Math.min(idleInterval << 1, MAX_IDLE_INTERVAL_NANOS);
+            }
+        }
+    }
+
+    /**
+     * ReclaimTask removes the collected nodes of the owner
+     *
+     * @param <T> the type of owner
+     */
+    @FunctionalInterface
+    interface ReclaimTask<T> {
+
+        /**
+         * Removes at most batchSize collected nodes of the owner
+         *
+         * @param owner     the owner
+         * @param batchSize the maximum number of nodes to reclaim
+         * @return true if there are more nodes to reclaim
+         */
+        boolean reclaim(T owner, int batchSize);
+    }
+
+    private static class Registration<T> {
+        private final WeakReference<T> owner;
+        private final ReclaimTask<? super T> task;
+        private final int batchSize;
+        private final Runnable release;
+
+        Registration(T owner, ReclaimTask<? super T> task, int batchSize, Runnable release) {
+            this.owner = new WeakReference<>(owner);
+            this.task = task;
+            this.batchSize = batchSize;
+            this.release = release;
+        }
+
+        void release() {
+            if (Objects.nonNull(release)) {
+                release.run();
+            }
+        }
+
+        /**
+         * @return -1 if the owner is collected, 1 if the owner has more nodes to reclaim, otherwise 0.
+         */
+        int reclaim() {
+            for (int i = 0; i < MAX_BATCHES_PER_ROUND; i++) {
+                T current = owner.get();
+                if (Objects.isNull(current)) {
+                    return -1;
+                }
+                if (!task.reclaim(current, batchSize)) {
+                    return 0;
+                }
+            }
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+/**
+ * RemovalCause tells why an entry is removed from SoftConcurrentHashMap
+ *
+ * @author xasync.com
+ */
+public enum RemovalCause {
+
+    /**
+     * The entry is removed or invalidated by the user
+     */
+    EXPLICIT,
+
+    /**
+     * The value of the entry is replaced by the user
+     */
+    REPLACED,
+
+    /**
+     * The value of the entry has been collected by GC, the value is null in the notification
+     */
+    COLLECTED,
+
+    /**
+     * The entry has expired
+     */
+    EXPIRED,
+
+    /**
+     * The entry is evicted by the policy of size or weight, or shed under memory pressure
+     */
+    EVICTED
+}
@@ -0,0 +1,38 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+/**
+ * RemovalListener is notified when an entry is removed from SoftConcurrentHashMap. The notifications are delivered in
+ * batches on the executor of the map, so the listener never runs on the thread which removes the entry.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+
+    /**
+     * Notifies the removal of an entry, the exception thrown by the listener is reported to the uncaught exception
+     * handler of the delivering thread and never stops the delivery of other notifications.
+     *
+     * @param key   the key of entry
+     * @param value the value of entry, it is null if the value has been collected by GC
+     * @param cause the cause of removal
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+}
@@ -0,0 +1,116 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RemovalNotifier queues the removals of SoftConcurrentHashMap in a lock-free queue and delivers them to the listener
+ * in batches on the executor, at most one delivery task of a map is scheduled at any time, so the notifications are
+ * delivered in the order they are queued.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+final class RemovalNotifier<K, V> {
+
+    /**
+     * The maximum number of notifications delivered by a task, the remaining ones are delivered by a new task so a
+     * busy map never monopolizes a thread of the executor
+     */
+    private final static int BATCH_SIZE = 256;
+
+    private final RemovalListener<? super K, ? super V> listener;
+    private final Executor executor;
+    private final Queue<Notification<K, V>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    RemovalNotifier(RemovalListener<? super K, ? super V> listener, Executor executor) {
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues the removal and schedules the delivery if no task is scheduled
+     *
+     * @param key   the key
+     * @param value the value, nullable
+     * @param cause the cause
+     */
+    void publish(K key, V value, RemovalCause cause) {
+        pending.offer(new Notification<>(key, value, cause));
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.get() || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::deliver);
+        } catch (RejectedExecutionException ex) {
+            //the notifications are kept, and the next removal retries
+            scheduled.set(false);
+        }
+    }
+
+    private void deliver() {
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Notification<K, V> notification = pending.poll();
+                if (Objects.isNull(notification)) {
+                    break;
+                }
+                try {
+                    listener.onRemoval(notification.key, notification.value, notification.cause);
+                } catch (Throwable ex) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        //the notifications queued after the last poll may see the flag before it was cleared
+        if (!pending.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Notification is a removal waiting for the delivery
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    private static class Notification<K, V> {
+        private final K key;
+        private final V value;
+        private final RemovalCause cause;
+
+        Notification(K key, V value, RemovalCause cause) {
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+    }
+}
@@ -19,9 +19,20 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 /**
  * SoftConcurrentHashMap
@@ -30,7 +41,12 @@ import java.util.stream.Collectors;
  */
 public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcurrentHashMap.SoftDataNode<K, V>> {
 
-    private final static int CLEAR_THRESHOLD = 10;
+    private final static int DEFAULT_RECLAIM_BATCH_SIZE = 64;
+    private final static int SHED_SAMPLE_SIZE = 1024;
+
+    @SuppressWarnings("rawtypes")
+    private final static AtomicIntegerFieldUpdater<SoftConcurrentHashMap> GENERATION =
+            AtomicIntegerFieldUpdater.newUpdater(SoftConcurrentHashMap.class, "generation");
 
     /**
      * Declares the instance of ReferenceQueue for constructing each SoftDataNode and
@@ -39,15 +55,143 @@ public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcur
     private final ReferenceQueue<V> referenceQueue = new ReferenceQueue<>();
 
     /**
-     *
+     * The collected nodes which have been polled from the referenceQueue but not removed yet
+     */
+    private final Queue<SoftDataNode<K, V>> collectedNodes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of nodes in collectedNodes
+     */
+    private final LongAdder reclaimBacklog = new LongAdder();
+
+    /**
+     * The loadings in flight, the concurrent computations of the same key wait for the same loading
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loadings = new ConcurrentHashMap<>();
+
+    /**
+     * The loader used by getOrLoad, it is null if the builder doesn't set it
+     */
+    private Function<? super K, ? extends V> loader;
+
+    /**
+     * Who removes the collected nodes, only the builder can change it
+     */
+    private ReclaimMode reclaimMode = ReclaimMode.BACKGROUND;
+
+    /**
+     * The maximum number of collected nodes removed each time
+     */
+    private int reclaimBatchSize = DEFAULT_RECLAIM_BATCH_SIZE;
+
+    /**
+     * The policy which bounds the map by size or weight, it is null if the map is unbounded
+     */
+    private TinyLfuPolicy<K, V> policy;
+
+    /**
+     * The weigher calculates the weight of each entry, it is null if the map is unbounded
+     */
+    private Weigher<? super K, ? super V> weigher;
+
+    /**
+     * The duration after writing that an entry expires, it is disabled if it is not positive
+     */
+    private long expireAfterWriteNanos;
+
+    /**
+     * The duration after reading that an entry expires, it is disabled if it is not positive
+     */
+    private long expireAfterAccessNanos;
+
+    /**
+     * The timing wheel which schedules the expirations, it is null if the entries never expire
+     */
+    private TimerWheel<K, V> timerWheel;
+
+    /**
+     * The duration after writing that an entry is refreshed by the loader on the next read, it is disabled if it is
+     * not positive
+     */
+    private long refreshAfterWriteNanos;
+
+    /**
+     * The executor which runs the refreshing, it is null if the refreshing is disabled
+     */
+    private Executor executor;
+
+    /**
+     * The notifier of removals, it is null if the builder doesn't set a removal listener
+     */
+    private RemovalNotifier<K, V> removalNotifier;
+
+    /**
+     * Whether the entries are shed by MemoryPressureShedder under memory pressure
+     */
+    private boolean shedsOnMemoryPressure;
+
+    /**
+     * Whether the nodes record their write time and access time
+     */
+    private boolean recordsTime;
+
+    /**
+     * The source of time in nanoseconds
+     */
+    private LongSupplier ticker = System::nanoTime;
+
+    /**
+     * The off-heap tier which keeps the encoded values, it is null if the builder doesn't enable it
+     */
+    private OffHeapTier<K> offHeapTier;
+
+    /**
+     * The codec used by the off-heap tier
+     */
+    private ValueCodec<V> valueCodec;
+
+    /**
+     * The hot set which pins the hottest values strongly, it is null if the builder doesn't enable it
+     */
+    private StrongHotSet<K, V> hotSet;
+
+    /**
+     * The per-thread cache in front of the table, it is null if the builder doesn't enable it
+     */
+    private NearCache<K, V> nearCache;
+
+    /**
+     * The recorder of statistics, it is null if the map doesn't record stats
+     */
+    private StatsCounter statsCounter;
+
+    /**
+     * Whether the nodes are ManagedDataNode, it is true if any feature requires the bookkeeping fields
+     */
+    private boolean managed;
+
+    /**
+     * Whether the writes of nodes must be booked by the policy, the timing wheel, the off-heap tier, the near cache or
+     * the removal listener, the inherited writers of nodes are rejected if it is true
+     */
+    private boolean bookkeeping;
+
+    /**
+     * The keys of the tagged nodes by tag, it is replaced by a new one when the map is invalidated entirely
+     */
+    private volatile ConcurrentHashMap<Object, Set<K>> tagIndex = new ConcurrentHashMap<>();
+
+    /**
+     * The generation of the map, the ManagedDataNode created in an earlier generation is stale
      */
-    private final LongAdder nullValueOfNodeCount = new LongAdder();
+    private volatile int generation;
 
     /**
      * Non-parameter constructor
      */
     public SoftConcurrentHashMap() {
         super();
+        startReclaiming();
     }
 
     /**
@@ -57,6 +201,7 @@ public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcur
      */
     public SoftConcurrentHashMap(int initialCapacity) {
         super(initialCapacity);
+        startReclaiming();
     }
 
     /**
@@ -68,6 +213,7 @@ public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcur
      */
     public SoftConcurrentHashMap(int initialCapacity, float loadFactor) {
         super(initialCapacity, loadFactor);
+        startReclaiming();
     }
 
     /**
@@ -80,6 +226,85 @@ public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcur
      */
     public SoftConcurrentHashMap(int initialCapacity, float loadFactor, int concurrencyLevel) {
         super(initialCapacity, loadFactor, concurrencyLevel);
+        startReclaiming();
+    }
+
+    /**
+     * Creates an instance by the builder
+     *
+     * @param builder the builder
+     */
+    private SoftConcurrentHashMap(Builder<K, V> builder) {
+        super(builder.initialCapacity);
+        if (builder.maximumWeight >= 0) {
+            this.weigher = Objects.nonNull(builder.weigher) ? builder.weigher : (k, v) -> 1;
+            this.policy = new TinyLfuPolicy<>(this, builder.maximumWeight, Objects.nonNull(builder.weigher));
+        }
+        if (builder.expireAfterWriteNanos > 0 || builder.expireAfterAccessNanos > 0
+                || builder.refreshAfterWriteNanos > 0 || builder.shedsOnMemoryPressure) {
+            this.ticker = builder.ticker;
+        }
+        if (builder.expireAfterWriteNanos > 0 || builder.expireAfterAccessNanos > 0) {
+            this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+            this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+            this.timerWheel = new TimerWheel<>(ticker.getAsLong(), this::deadlineOf);
+        }
+        Executor executor = Objects.nonNull(builder.executor) ? builder.executor : ForkJoinPool.commonPool();
+        if (builder.refreshAfterWriteNanos > 0) {
+            this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+            this.executor = executor;
+        }
+        if (Objects.nonNull(builder.removalListener)) {
+            this.removalNotifier = new RemovalNotifier<>(builder.removalListener, executor);
+        }
+        this.shedsOnMemoryPressure = builder.shedsOnMemoryPressure;
+        this.recordsTime = Objects.nonNull(timerWheel) || refreshAfterWriteNanos > 0 || shedsOnMemoryPressure;
+        if (builder.strongHotSetCapacity > 0) {
+            this.hotSet = new StrongHotSet<>(builder.strongHotSetCapacity, this::mappingCount);
+        }
+        if (builder.nearCacheCapacity > 0) {
+            this.nearCache = new NearCache<>(builder.nearCacheCapacity);
+        }
+        this.managed = Objects.nonNull(policy) || recordsTime || Objects.nonNull(hotSet);
+        this.loader = builder.loader;
+        this.reclaimMode = builder.reclaimMode;
+        this.reclaimBatchSize = builder.reclaimBatchSize;
+        if (Objects.nonNull(builder.valueCodec)) {
+            this.valueCodec = builder.valueCodec;
+            this.offHeapTier = new OffHeapTier<>(builder.offHeapCapacity);
+        }
+        this.bookkeeping = managed || Objects.nonNull(offHeapTier) || Objects.nonNull(nearCache)
+                || Objects.nonNull(removalNotifier);
+        if (builder.recordStats) {
+            this.statsCounter = new StatsCounter();
+            if (Objects.nonNull(builder.statsMBeanName)) {
+                statsCounter.register(builder.statsMBeanName);
+            }
+        }
+        //the hook only references the counter, so it never pins the map
+        startReclaiming(Objects.nonNull(builder.statsMBeanName) ? statsCounter::unregister : null);
+        if (shedsOnMemoryPressure) {
+            if (builder.shedThresholdRatio > 0) {
+                MemoryPressureShedder.installThresholds(builder.shedThresholdRatio);
+            }
+            MemoryPressureShedder.register(this);
+        }
+    }
+
+    /**
+     * Creates a builder for constructing a SoftConcurrentHashMap with the optional features, likes:
+     * <pre>
+     *     SoftConcurrentHashMap&lt;String, Order&gt; orders = SoftConcurrentHashMap.&lt;String, Order&gt;builder()
+     *          .maximumSize(100_000)
+     *          .build();
+     * </pre>
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     * @return Builder
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
     }
 
     /**
@@ -90,8 +315,32 @@ public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcur
      * @param value value to be associated with the specified key
      */
     public void putAsSoft(K key, V value) {
-        SoftDataNode<K, V> sdn = new SoftDataNode<>(key, value, referenceQueue);
-        this.put(key, sdn);
+        putAsSoft(key, newNode(key, value, null), value);
+    }
+
+    /**
+     * Maps the specified key to the specified value in this table and attaches the tags to the entry, so that the
+     * entry can be invalidated by any of its tags. The tags are replaced if the key is put again.
+     * <p>
+     * A tagged entry is never kept by the off-heap tier once it leaves the heap, so that a promotion never revives
+     * it without its tags.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @param tags  the tags of the entry
+     * @see #invalidateTag(Object)
+     */
+    public void putAsSoft(K key, V value, Object... tags) {
+        Object[] copied = tags.clone();
+        for (Object tag : copied) {
+            Objects.requireNonNull(tag, "requires non-null tags");
+        }
+        putAsSoft(key, newNode(key, value, copied.length > 0 ? copied : null), value);
+    }
+
+    private void putAsSoft(K key, SoftDataNode<K, V> sdn, V value) {
+        SoftDataNode<K, V> old = Objects.isNull(offHeapTier) ? super.put(key, sdn) : putThrough(key, sdn, value);
+        afterWrite(sdn, old);
     }
 
 
@@ -102,11 +351,63 @@ public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcur
      * @param value value to be associated with the specified key
      */
     public void putAsSoftIfAbsent(K key, V value) {
-        if (!this.containsKey(key)) {
-            putAsSoft(key, value);
+        Objects.requireNonNull(value, "requires a non-null value");
+        installIfAbsent(key, value);
+    }
+
+    /**
+     * If the specified key is not associated with a value or its value has been collected by GC, computes the value by
+     * the mappingFunction and installs it atomically. The concurrent computations of the same key are coalesced, only
+     * one thread invokes the mappingFunction and the others wait for its result.
+     * <p>
+     * The mappingFunction must not compute the same key of this map recursively.
+     *
+     * @param key             key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value, nothing is installed if it returns null
+     * @return the current (existing or computed) value, or null if the computed value is null
+     */
+    public V computeIfAbsentOnSoft(K key, Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction, "requires a non-null mappingFunction");
+        V value = getOnSoft(key);
+        if (Objects.nonNull(value)) {
+            return value;
+        }
+        CompletableFuture<V> loading = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loadings.putIfAbsent(key, loading);
+        if (Objects.nonNull(inFlight)) {
+            return waitFor(inFlight);
+        }
+        try {
+            //double check because the previous loading may complete between getOnSoft and putIfAbsent
+            value = lookup(key);
+            if (Objects.isNull(value)) {
+                V computed = load(key, mappingFunction);
+                value = Objects.nonNull(computed) ? installIfAbsent(key, computed) : null;
+            }
+            loading.complete(value);
+            return value;
+        } catch (Throwable ex) {
+            loading.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loadings.remove(key, loading);
         }
     }
 
+    /**
+     * Returns the value to which the specified key is mapped, it is loaded by the loader of the builder if this map
+     * contains no mapping for the key or the value has been collected by GC.
+     *
+     * @param key key with which the specified value is to be associated
+     * @return the value, or null if the loader returns null
+     */
+    public V getOrLoad(K key) {
+        if (Objects.isNull(loader)) {
+            throw new IllegalStateException("getOrLoad requires a loader, you can set it by the builder");
+        }
+        return computeIfAbsentOnSoft(key, loader);
+    }
+
     /**
      * Copies all mappings from the specified map to this one.
      *
@@ -126,16 +427,99 @@ public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcur
      * @return the value
      */
     public V getOnSoft(K key) {
-        SoftDataNode<K, V> sdn = this.get(key);
+        V value = Objects.isNull(nearCache) ? lookup(key) : nearLookup(key);
+        if (Objects.nonNull(statsCounter)) {
+            if (Objects.nonNull(value)) {
+                statsCounter.recordHit();
+            } else {
+                statsCounter.recordMiss();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Looks up the value in the near cache of the current thread first, the node is cached after it is looked up in
+     * the table. A near hit is replayed to the policy and the hot set occasionally.
+     */
+    private V nearLookup(K key) {
+        SoftDataNode<K, V> cached = nearCache.get(key);
+        if (Objects.nonNull(cached)) {
+            V value = liveValue(cached);
+            if (Objects.nonNull(value)) {
+                if ((Objects.nonNull(policy) || Objects.nonNull(hotSet)) && nearCache.shouldReplay()) {
+                    afterNearHit(cached, value);
+                }
+                return value;
+            }
+        }
+        int stamp = nearCache.stamp(key);
+        SoftDataNode<K, V> node = this.get(key);
+        V value = lookup(key, node);
+        //the value may be promoted from the off-heap tier as a new node, which is cached by the next read
+        if (Objects.nonNull(value) && Objects.nonNull(node) && node.get() == value) {
+            nearCache.put(node, stamp);
+        }
+        return value;
+    }
+
+    private void afterNearHit(SoftDataNode<K, V> node, V value) {
+        if (Objects.nonNull(policy)) {
+            policy.afterRead((ManagedDataNode<K, V>) node);
+        }
+        if (Objects.nonNull(hotSet)) {
+            hotSet.recordAccess((ManagedDataNode<K, V>) node, value);
+        }
+    }
+
+    /**
+     * Looks up the live value of the key without recording stats
+     */
+    private V lookup(K key) {
+        return lookup(key, this.get(key));
+    }
+
+    private V lookup(K key, SoftDataNode<K, V> sdn) {
         if (Objects.isNull(sdn)) {
-            return null;
+            return Objects.nonNull(offHeapTier) ? promote(key) : null;
         }
         V value = sdn.get();
-        //the value is released by GC and returns null directly.
+        //the value is released by GC and returns null directly, the queue is drained off the read path.
         if (Objects.isNull(value)) {
-            clearInvalidDataNode(key);
+            discard(key, sdn, RemovalCause.COLLECTED);
+            return Objects.nonNull(offHeapTier) ? promote(key) : null;
+        }
+        //the map has been invalidated entirely since the node was created, it is discarded lazily
+        if (isStale(sdn)) {
+            removeNode(key, sdn, RemovalCause.EXPLICIT);
             return null;
         }
+        if (recordsTime) {
+            ManagedDataNode<K, V> node = (ManagedDataNode<K, V>) sdn;
+            long now = ticker.getAsLong();
+            if (Objects.nonNull(timerWheel) && hasExpired(node, now)) {
+                if (removeNode(key, sdn, RemovalCause.EXPIRED) && Objects.nonNull(statsCounter)) {
+                    statsCounter.recordExpiration();
+                }
+                return null;
+            }
+            //skips the volatile write unless the time has moved by a tick of the wheel, which can't change the expiry
+            if ((expireAfterAccessNanos > 0 || shedsOnMemoryPressure)
+                    && now - node.accessTime >= TimerWheel.TICK_NANOS) {
+                node.accessTime = now;
+            }
+            //the stale value is still returned, and only the first reader triggers the refreshing
+            if (refreshAfterWriteNanos > 0 && now - node.refreshTime >= refreshAfterWriteNanos
+                    && node.startRefreshing()) {
+                refreshAsync(node);
+            }
+        }
+        if (Objects.nonNull(policy)) {
+            policy.afterRead((ManagedDataNode<K, V>) sdn);
+        }
+        if (Objects.nonNull(hotSet)) {
+            hotSet.recordAccess((ManagedDataNode<K, V>) sdn, value);
+        }
         return value;
     }
 
@@ -153,137 +537,1714 @@ public class SoftConcurrentHashMap<K, V> extends ConcurrentHashMap<K, SoftConcur
 
 
     /**
-     * Returns a Collection view of the values contained in this map.
+     * Returns a live Collection view of the values contained in this map, the values which have been collected by GC
+     * or expired are skipped. The view is weakly consistent like the views of ConcurrentHashMap, and its size is an
+     * estimate which includes the entries not reclaimed yet.
      *
      * @return the values contained in this map.
      */
     public Collection<V> valuesOnSoft() {
-        return this.values().stream().map(SoftDataNode::get).collect(Collectors.toList());
+        return new ValuesOnSoftView();
     }
 
     /**
-     * Returns a Set view of the mappings contained in this map.
+     * Returns a live Set view of the mappings contained in this map, the mappings whose values have been collected by
+     * GC or expired are skipped. Each entry holds its value strongly, so it never needs a second lookup.
      *
      * @return a Set view
      */
     public Set<Entry<K, V>> entrySetOnSoft() {
-        Set<Entry<K, V>> entrySet = new HashSet<>();
-        for (Map.Entry<K, SoftDataNode<K, V>> entry : this.entrySet()) {
-            entrySet.add(new SoftEntrySetView<>(entry.getKey(), this));
-        }
-        return entrySet;
+        return new EntrySetOnSoftView();
+    }
+
+    /**
+     * Returns a Spliterator over the mappings which skips the values collected by GC or expired, it is weakly
+     * consistent and can be split for parallel traversal.
+     *
+     * @return the Spliterator
+     */
+    public Spliterator<Entry<K, V>> spliteratorOnSoft() {
+        return new LiveSpliterator<>(this.values().spliterator(), AbstractMap.SimpleImmutableEntry::new);
     }
 
     /**
-     * Performs the given action for each entry in this map until all entries have been processed by action
+     * Performs the given action for each entry in this map until all entries have been processed by action, the
+     * entries whose values have been collected by GC or expired are skipped.
      *
      * @param action an anonymous function which needs to consume each entry in this map
      */
     public void forEachOnSoft(BiConsumer<? super K, ? super V> action) {
-        super.forEach((k, v) -> action.accept(k, v.get()));
-    }
-
-    private void clearInvalidDataNode(K key) {
-        this.remove(key);
-        nullValueOfNodeCount.increment();
-        //If the threshold is exceeded, clear the data that has not been accessed for a long time but has been GC.
-        if (nullValueOfNodeCount.sum() >= CLEAR_THRESHOLD) {
-            try {
-                for (int i = 0; i < this.size(); i++) {
-                    SoftDataNode<K, V> poll = (SoftDataNode<K, V>) referenceQueue.poll();
-                    if (Objects.isNull(poll)) {
-                        break;
-                    }
-                    this.remove(poll.getIndex());
-                }
-            } catch (Throwable ex) {
-                //pass
+        forEachOnSoft(Long.MAX_VALUE, action);
+    }
+
+    /**
+     * Performs the given action for each live entry, it is executed in parallel on the ForkJoinPool.commonPool() if
+     * the map has more entries than the parallelismThreshold, see {@link ConcurrentHashMap#forEach(long, BiConsumer)}.
+     *
+     * @param parallelismThreshold the (estimated) number of entries needed for this operation to be executed in parallel
+     * @param action               the action
+     */
+    public void forEachOnSoft(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action, "requires a non-null action");
+        super.forEach(parallelismThreshold, (k, node) -> {
+            V value = liveValue(node);
+            if (Objects.nonNull(value)) {
+                action.accept(k, value);
             }
-            nullValueOfNodeCount.reset();
-        }
+        });
     }
 
     /**
-     * SoftDataNode
+     * Returns the result of accumulating the given transformation of all live entries using the given reducer,
+     * see {@link ConcurrentHashMap#reduce(long, BiFunction, BiFunction)}.
      *
-     * @param <K> the type of key
-     * @param <V> the type of value
+     * @param parallelismThreshold the (estimated) number of entries needed for this operation to be executed in parallel
+     * @param transformer          a function returning the transformation for an entry, or null if it is skipped
+     * @param reducer              a commutative associative combining function
+     * @param <U>                  the type of result
+     * @return the result, or null if there is no result
      */
-    public static class SoftDataNode<K, V> extends SoftReference<V> {
-        /**
-         * the index with which the specified value is to be associated
-         */
-        private final K index;
+    public <U> U reduceOnSoft(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> transformer,
+                              BiFunction<? super U, ? super U, ? extends U> reducer) {
+        Objects.requireNonNull(transformer, "requires a non-null transformer");
+        return super.reduce(parallelismThreshold, (k, node) -> {
+            V value = liveValue(node);
+            return Objects.nonNull(value) ? transformer.apply(k, value) : null;
+        }, reducer);
+    }
 
-        /**
-         * Constructor
-         *
-         * @param index node's index
-         * @param data  node's value
-         */
-        public SoftDataNode(K index, V data) {
-            super(data);
-            this.index = index;
-        }
+    /**
+     * Returns the result of accumulating all live values using the given reducer,
+     * see {@link ConcurrentHashMap#reduceValues(long, BiFunction)}.
+     *
+     * @param parallelismThreshold the (estimated) number of entries needed for this operation to be executed in parallel
+     * @param reducer              a commutative associative combining function
+     * @return the result, or null if there is no live value
+     */
+    public V reduceValuesOnSoft(long parallelismThreshold, BiFunction<? super V, ? super V, ? extends V> reducer) {
+        return reduceOnSoft(parallelismThreshold, (k, v) -> v, reducer);
+    }
 
-        /**
-         * Constructor
-         *
-         * @param index node's index
-         * @param data  node's value
-         * @param q     ReferenceQueue
-         */
-        public SoftDataNode(K index, V data, ReferenceQueue<? super V> q) {
-            super(data, q);
-            this.index = index;
+    /**
+     * Removes the entries tagged by the tag, it only touches the entries attached to the tag rather than scanning
+     * the whole map.
+     *
+     * @param tag the tag
+     * @return the number of entries removed
+     */
+    public int invalidateTag(Object tag) {
+        Set<K> keys = tagIndex.remove(tag);
+        if (Objects.isNull(keys)) {
+            return 0;
+        }
+        int removed = 0;
+        for (K key : keys) {
+            SoftDataNode<K, V> node = this.get(key);
+            //the key may be mapped to a new node which isn't tagged by the tag
+            if (node instanceof ManagedDataNode && ((ManagedDataNode<K, V>) node).hasTag(tag)
+                    && this.remove(key, node)) {
+                removed++;
+            }
         }
+        return removed;
+    }
 
-        /**
-         * Get the index
-         *
-         * @return the index
-         */
-        public K getIndex() {
-            return index;
+    /**
+     * Invalidates all entries in O(1) if the map is created by the builder, the entries become stale at once and are
+     * discarded lazily when they are read, evicted or collected, so they are still counted by size() until then. The
+     * off-heap tier, the hot set and the near cache are cleared eagerly, so no stale value stays pinned strongly. The
+     * plain map has no generation to compare, so it is cleared instead.
+     * <p>
+     * The writes racing with the invalidation may either survive it or not.
+     */
+    public void invalidateAll() {
+        if (!managed) {
+            clear();
+            return;
+        }
+        //the index is replaced before the generation is advanced, so a node of the new generation is always
+        //indexed by the new index
+        tagIndex = new ConcurrentHashMap<>();
+        GENERATION.incrementAndGet(this);
+        if (Objects.nonNull(offHeapTier)) {
+            offHeapTier.clear();
+        }
+        //a read racing with the invalidation may pin a stale value again, it is unpinned when it is discarded
+        if (Objects.nonNull(hotSet)) {
+            hotSet.clear();
+        }
+        if (Objects.nonNull(nearCache)) {
+            nearCache.invalidateAll();
         }
     }
 
     /**
-     * SoftEntrySetView
+     * Returns the total weight of the entries if the map is bounded, otherwise returns the number of entries.
      *
-     * @param <K> the type of key
-     * @param <V> the type of value
+     * @return the weighted size
      */
-    private static class SoftEntrySetView<K, V> extends AbstractMap.SimpleImmutableEntry<K, V> {
-        private final SoftConcurrentHashMap<K, V> map;
+    public long weightedSize() {
+        return Objects.nonNull(policy) ? policy.weightedSize() : this.mappingCount();
+    }
 
-        public SoftEntrySetView(K key, SoftConcurrentHashMap<K, V> map) {
-            super(key, null);
-            Objects.requireNonNull(key, "requires a non-null key");
-            this.map = map;
-        }
+    /**
+     * Returns a snapshot of the statistics, all counts are zero if the map doesn't record stats.
+     *
+     * @return CacheStats
+     */
+    public CacheStats stats() {
+        return Objects.nonNull(statsCounter) ? statsCounter.snapshot() : CacheStats.empty();
+    }
 
-        @Override
-        public K getKey() {
-            return super.getKey();
+    /**
+     * Unregisters the stats MBean if the map has registered it, so that its name can be registered by a new map, likes
+     * the one rebuilt when the context is refreshed. The map is still usable and keeps recording stats after it is
+     * closed. The MBean of a map discarded without closing is unregistered after the map is collected.
+     */
+    public void close() {
+        if (Objects.nonNull(statsCounter)) {
+            statsCounter.unregister();
         }
+    }
 
-        @Override
-        public V getValue() {
-            return map.getOnSoft(getKey());
-        }
+    /**
+     * Returns the number of nodes whose values have been collected by GC and are discovered, but not removed yet.
+     * It keeps growing if the map reclaims on write and the writes are rarer than the collections.
+     *
+     * @return the backlog of reclaiming
+     */
+    public long reclaimBacklog() {
+        return reclaimBacklog.sum();
+    }
 
-        @Override
-        public boolean equals(Object other) {
-            Object oKey = (other instanceof SoftConcurrentHashMap.SoftEntrySetView) ? ((SoftEntrySetView<?, ?>) other).getKey() : String.valueOf(other);
-            return getKey().equals(oKey);
+    @Override
+    public SoftDataNode<K, V> remove(Object key) {
+        SoftDataNode<K, V> old = Objects.isNull(offHeapTier) ? super.remove(key) : removeThrough(key, null);
+        if (Objects.nonNull(old)) {
+            afterRemoval(old, RemovalCause.EXPLICIT);
         }
+        return old;
+    }
 
-        @Override
-        public int hashCode() {
-            return getKey().hashCode();
-        }
+    @Override
+    public boolean remove(Object key, Object value) {
+        return removeNode(key, value, RemovalCause.EXPLICIT);
     }
 
+    /**
+     * Removes the mapping only if the key is mapped to the node, and invalidates its record in the off-heap tier
+     */
+    @SuppressWarnings("unchecked")
+    private boolean removeNode(Object key, Object node, RemovalCause cause) {
+        boolean removed = Objects.isNull(offHeapTier) ? super.remove(key, node)
+                : Objects.nonNull(node) && Objects.nonNull(removeThrough(key, node));
+        if (removed) {
+            afterRemoval((SoftDataNode<K, V>) node, cause);
+        }
+        return removed;
+    }
 
+    @Override
+    public void clear() {
+        //the removals are only notified one by one, and the remaining mappings are cleared silently
+        if (Objects.nonNull(removalNotifier)) {
+            for (Entry<K, SoftDataNode<K, V>> entry : this.entrySet()) {
+                if (super.remove(entry.getKey(), entry.getValue())) {
+                    publishRemoval(entry.getValue(), RemovalCause.EXPLICIT);
+                }
+            }
+        }
+        super.clear();
+        tagIndex.clear();
+        if (Objects.nonNull(offHeapTier)) {
+            offHeapTier.clear();
+        }
+        if (Objects.nonNull(policy)) {
+            policy.afterClear();
+        }
+        if (Objects.nonNull(hotSet)) {
+            hotSet.clear();
+        }
+        if (Objects.nonNull(nearCache)) {
+            nearCache.invalidateAll();
+        }
+        if (Objects.nonNull(timerWheel)) {
+            timerWheel.retainIf(node -> this.get(node.getIndex()) == node);
+        }
+    }
+
+    /**
+     * Returns a view of the nodes, the removals through it are booked like {@link #remove(Object, Object)}.
+     *
+     * @return the nodes contained in this map
+     */
+    @Override
+    public Collection<SoftDataNode<K, V>> values() {
+        return new NodesView();
+    }
+
+    /**
+     * Returns a view of the mappings to nodes, the removals through it are booked like
+     * {@link #remove(Object, Object)}. The keySet() of ConcurrentHashMap can't be replaced, its remove(Object) is
+     * booked like {@link #remove(Object)} but the removals by its iterator are not, so remove the keys by the map.
+     *
+     * @return the mappings contained in this map
+     */
+    @Override
+    public Set<Entry<K, SoftDataNode<K, V>>> entrySet() {
+        return new EntriesView();
+    }
+
+    @Override
+    public SoftDataNode<K, V> put(K key, SoftDataNode<K, V> value) {
+        rejectRawWrite();
+        return super.put(key, value);
+    }
+
+    @Override
+    public SoftDataNode<K, V> putIfAbsent(K key, SoftDataNode<K, V> value) {
+        rejectRawWrite();
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends SoftDataNode<K, V>> m) {
+        rejectRawWrite();
+        super.putAll(m);
+    }
+
+    @Override
+    public SoftDataNode<K, V> replace(K key, SoftDataNode<K, V> value) {
+        rejectRawWrite();
+        return super.replace(key, value);
+    }
+
+    @Override
+    public boolean replace(K key, SoftDataNode<K, V> oldValue, SoftDataNode<K, V> newValue) {
+        rejectRawWrite();
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super SoftDataNode<K, V>, ? extends SoftDataNode<K, V>> function) {
+        rejectRawWrite();
+        super.replaceAll(function);
+    }
+
+    @Override
+    public SoftDataNode<K, V> compute(K key, BiFunction<? super K, ? super SoftDataNode<K, V>,
+            ? extends SoftDataNode<K, V>> remappingFunction) {
+        rejectRawWrite();
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public SoftDataNode<K, V> computeIfAbsent(K key,
+                                              Function<? super K, ? extends SoftDataNode<K, V>> mappingFunction) {
+        rejectRawWrite();
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public SoftDataNode<K, V> computeIfPresent(K key, BiFunction<? super K, ? super SoftDataNode<K, V>,
+            ? extends SoftDataNode<K, V>> remappingFunction) {
+        rejectRawWrite();
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public SoftDataNode<K, V> merge(K key, SoftDataNode<K, V> value, BiFunction<? super SoftDataNode<K, V>,
+            ? super SoftDataNode<K, V>, ? extends SoftDataNode<K, V>> remappingFunction) {
+        rejectRawWrite();
+        return super.merge(key, value, remappingFunction);
+    }
+
+    /**
+     * The inherited writers put the nodes created by the caller, which bypass the bookkeeping of the map created by
+     * the builder, so they are only allowed for the plain map.
+     */
+    private void rejectRawWrite() {
+        if (bookkeeping) {
+            throw new UnsupportedOperationException("the map created by the builder can only be written by "
+                    + "putAsSoft, putAsSoftIfAbsent, computeIfAbsentOnSoft and remove");
+        }
+    }
+
+    /**
+     * Removes the node evicted by the policy if it is still mapped.
+     *
+     * @param node the node evicted
+     * @return true if the node is removed
+     */
+    boolean evictNode(ManagedDataNode<K, V> node) {
+        boolean removed = detach(node.getIndex(), node);
+        if (removed && Objects.nonNull(node.tags)) {
+            untag(node);
+        }
+        if (removed && Objects.nonNull(timerWheel)) {
+            timerWheel.deschedule(node);
+        }
+        if (removed && Objects.nonNull(hotSet)) {
+            hotSet.remove(node);
+        }
+        if (removed && Objects.nonNull(nearCache)) {
+            nearCache.invalidate(node.getIndex());
+        }
+        if (removed && Objects.nonNull(statsCounter)) {
+            statsCounter.recordEviction(node.weight);
+        }
+        if (removed && Objects.nonNull(removalNotifier)) {
+            publishRemoval(node, RemovalCause.EVICTED);
+        }
+        return removed;
+    }
+
+    private SoftDataNode<K, V> newNode(K key, V value) {
+        return newNode(key, value, null);
+    }
+
+    /**
+     * Creates the node of the value, a tagged node is always a ManagedDataNode even if the map is plain
+     *
+     * @param tags the tags, or null if the node is untagged
+     */
+    private SoftDataNode<K, V> newNode(K key, V value, Object[] tags) {
+        if (!managed && Objects.isNull(tags)) {
+            return new SoftDataNode<>(key, value, referenceQueue);
+        }
+        int weight = Objects.nonNull(weigher) ? weigher.weigh(key, value) : 1;
+        if (weight < 0) {
+            throw new IllegalArgumentException("the weight of '" + key + "' is negative: " + weight);
+        }
+        ManagedDataNode<K, V> node = new ManagedDataNode<>(key, value, referenceQueue, weight);
+        node.generation = generation;
+        node.tags = tags;
+        if (recordsTime) {
+            node.writeTime = ticker.getAsLong();
+            node.accessTime = node.writeTime;
+            node.refreshTime = node.writeTime;
+        }
+        return node;
+    }
+
+    private void afterWrite(SoftDataNode<K, V> node, SoftDataNode<K, V> old) {
+        if (Objects.nonNull(timerWheel)) {
+            ManagedDataNode<K, V> managedNode = (ManagedDataNode<K, V>) node;
+            if (old instanceof ManagedDataNode) {
+                timerWheel.deschedule((ManagedDataNode<K, V>) old);
+            }
+            timerWheel.schedule(managedNode);
+            //the node may be removed before it was scheduled, and the remover couldn't deschedule it
+            if (this.get(node.getIndex()) != node) {
+                timerWheel.deschedule(managedNode);
+            }
+        }
+        if (Objects.nonNull(policy)) {
+            policy.afterWrite((ManagedDataNode<K, V>) node, old);
+        }
+        if (Objects.nonNull(hotSet) && old instanceof ManagedDataNode) {
+            hotSet.remove((ManagedDataNode<K, V>) old);
+        }
+        if (isTagged(node)) {
+            tag((ManagedDataNode<K, V>) node);
+        }
+        if (isTagged(old)) {
+            untag((ManagedDataNode<K, V>) old);
+        }
+        if (Objects.nonNull(nearCache)) {
+            nearCache.invalidate(node.getIndex());
+        }
+        if (Objects.nonNull(removalNotifier) && Objects.nonNull(old)) {
+            publishRemoval(old, causeOfReplacing(old));
+        }
+        if (reclaimMode == ReclaimMode.ON_WRITE) {
+            reclaim(reclaimBatchSize);
+        }
+    }
+
+    private V load(K key, Function<? super K, ? extends V> mappingFunction) {
+        if (Objects.isNull(statsCounter)) {
+            return mappingFunction.apply(key);
+        }
+        long startTime = System.nanoTime();
+        try {
+            V computed = mappingFunction.apply(key);
+            statsCounter.recordLoadSuccess(System.nanoTime() - startTime);
+            return computed;
+        } catch (Throwable ex) {
+            statsCounter.recordLoadFailure(System.nanoTime() - startTime);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns at most limit live entries, the most recently accessed ones first if the map records the time, or else
+     * in the order of table. It is used by SoftMapSnapshot and never counts as reads.
+     *
+     * @param limit the maximum number of entries
+     * @return the entries
+     */
+    List<Entry<K, V>> hottestEntries(int limit) {
+        List<Entry<K, V>> entries = new ArrayList<>();
+        if (limit <= 0) {
+            return entries;
+        }
+        if (!recordsTime) {
+            for (SoftDataNode<K, V> node : this.values()) {
+                V value = liveValue(node);
+                if (Objects.nonNull(value)) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(node.getIndex(), value));
+                    if (entries.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return entries;
+        }
+        //keeps the hottest ones in a min-heap of access time, it is captured because the readers keep updating it
+        PriorityQueue<HotEntry<K, V>> hottest = new PriorityQueue<>(Comparator.comparingLong(e -> e.accessTime));
+        for (SoftDataNode<K, V> node : this.values()) {
+            V value = liveValue(node);
+            if (Objects.nonNull(value)) {
+                hottest.offer(new HotEntry<>(node.getIndex(), value, ((ManagedDataNode<K, V>) node).accessTime));
+                if (hottest.size() > limit) {
+                    hottest.poll();
+                }
+            }
+        }
+        while (!hottest.isEmpty()) {
+            entries.add(hottest.poll());
+        }
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    /**
+     * Sheds at most maxCount entries which are accessed least recently, it is called by MemoryPressureShedder. The
+     * cutoff of access time is estimated by a sample of entries, so it never sorts the whole map. The values of the
+     * shed entries are kept by the off-heap tier if it is enabled.
+     *
+     * @param maxCount the maximum number of entries to shed
+     * @return the number of entries shed
+     */
+    int shed(int maxCount) {
+        long size = this.mappingCount();
+        if (!recordsTime || maxCount <= 0 || size == 0) {
+            return 0;
+        }
+        long[] samples = new long[(int) Math.min(size, SHED_SAMPLE_SIZE)];
+        int sampled = 0;
+        for (SoftDataNode<K, V> node : this.values()) {
+            if (sampled == samples.length) {
+                break;
+            }
+            samples[sampled++] = ((ManagedDataNode<K, V>) node).accessTime;
+        }
+        if (sampled == 0) {
+            return 0;
+        }
+        Arrays.sort(samples, 0, sampled);
+        long cutoff = samples[(int) Math.min(sampled - 1, (long) maxCount * sampled / size)];
+        int shed = 0;
+        for (SoftDataNode<K, V> node : this.values()) {
+            if (shed >= maxCount) {
+                break;
+            }
+            if (((ManagedDataNode<K, V>) node).accessTime <= cutoff
+                    && discard(node.getIndex(), node, RemovalCause.EVICTED)) {
+                shed++;
+                if (Objects.nonNull(statsCounter)) {
+                    statsCounter.recordEviction(((ManagedDataNode<K, V>) node).weight);
+                }
+            }
+        }
+        return shed;
+    }
+
+    /**
+     * Removes the node whose value has been collected by GC or which is shed, its record in the off-heap tier is kept
+     * for promotion.
+     */
+    private boolean discard(K key, SoftDataNode<K, V> node, RemovalCause cause) {
+        if (detach(key, node)) {
+            afterRemoval(node, cause);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the node but keeps its record in the off-heap tier, unless the node is tagged.
+     */
+    private boolean detach(K key, SoftDataNode<K, V> node) {
+        if (Objects.nonNull(offHeapTier) && isTagged(node)) {
+            return Objects.nonNull(removeThrough(key, node));
+        }
+        return super.remove(key, node);
+    }
+
+    private boolean isTagged(SoftDataNode<K, V> node) {
+        return node instanceof ManagedDataNode && Objects.nonNull(((ManagedDataNode<K, V>) node).tags);
+    }
+
+    /**
+     * Adds the key of the node to the index of its tags, it is added after the node is mapped so that a concurrent
+     * untag() either sees the node or runs before the key is added.
+     */
+    private void tag(ManagedDataNode<K, V> node) {
+        ConcurrentHashMap<Object, Set<K>> index = tagIndex;
+        for (Object tag : node.tags) {
+            index.compute(tag, (t, keys) -> {
+                Set<K> tagged = Objects.nonNull(keys) ? keys : ConcurrentHashMap.newKeySet();
+                tagged.add(node.getIndex());
+                return tagged;
+            });
+        }
+    }
+
+    /**
+     * Removes the key of the node from the index of its tags, unless the key has been mapped to a new node with the
+     * same tag.
+     */
+    private void untag(ManagedDataNode<K, V> node) {
+        K key = node.getIndex();
+        for (Object tag : node.tags) {
+            tagIndex.computeIfPresent(tag, (t, keys) -> {
+                SoftDataNode<K, V> current = this.get(key);
+                if (!(current instanceof ManagedDataNode && ((ManagedDataNode<K, V>) current).hasTag(t))) {
+                    keys.remove(key);
+                }
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /**
+     * Puts the node and writes its value to the off-heap tier. The value is encoded and appended outside the lock of
+     * the key, and the record is kept under the lock only if it is still the latest, so that a concurrent write or
+     * removal never leaves a record of another value behind.
+     */
+    private SoftDataNode<K, V> putThrough(K key, SoftDataNode<K, V> node, V value) {
+        long address = Objects.nonNull(value) ? writeRecord(key, value, writeTimeOf(node)) : OffHeapTier.NO_ADDRESS;
+        Installation<K, V> installation = new Installation<>();
+        super.compute(key, (k, old) -> {
+            keepRecord(k, address);
+            installation.replaced = old;
+            return node;
+        });
+        return installation.replaced;
+    }
+
+    /**
+     * Encodes the value and appends it to the off-heap tier, it is called outside the lock of the key because the
+     * codec is user code.
+     *
+     * @return the address of the record
+     */
+    private long writeRecord(K key, V value, long writeTime) {
+        return offHeapTier.write(key, valueCodec.encode(value), writeTime);
+    }
+
+    /**
+     * Keeps the record of the node being installed under the lock of the key, the record is dropped if another one has
+     * been written meanwhile, whose node either has been replaced by this one or will replace it.
+     */
+    private void keepRecord(K key, long address) {
+        if (!offHeapTier.isLatest(key, address)) {
+            offHeapTier.invalidate(key);
+        }
+    }
+
+    /**
+     * Sets the write time of the node created under the lock to the time of its record
+     */
+    private void restoreWriteTime(SoftDataNode<K, V> node, long writeTime) {
+        if (recordsTime) {
+            ((ManagedDataNode<K, V>) node).writeTime = writeTime;
+            ((ManagedDataNode<K, V>) node).refreshTime = writeTime;
+        }
+    }
+
+    /**
+     * Removes the mapping and invalidates the record in the off-heap tier under the lock of the key, the key may
+     * only have a record in the off-heap tier.
+     *
+     * @param key      the key
+     * @param expected the node expected to be removed, or null if any node can be removed
+     * @return the removed node, or null if nothing is removed
+     */
+    @SuppressWarnings("unchecked")
+    private SoftDataNode<K, V> removeThrough(Object key, Object expected) {
+        Installation<K, V> removal = new Installation<>();
+        super.compute((K) key, (k, old) -> {
+            if (Objects.nonNull(expected) && old != expected) {
+                return old;
+            }
+            offHeapTier.invalidate(k);
+            removal.replaced = old;
+            return null;
+        });
+        return removal.replaced;
+    }
+
+    /**
+     * Promotes the value of the key from the off-heap tier if the key has no live value, its write time is restored
+     * so that the promotion never extends the expireAfterWrite. The record is decoded outside the lock of the key, and
+     * it is read again if it has been overwritten or invalidated before the node is installed.
+     */
+    private V promote(K key) {
+        while (true) {
+            OffHeapTier.Record record = offHeapTier.read(key);
+            if (Objects.isNull(record)) {
+                return null;
+            }
+            if (expireAfterWriteNanos > 0 && ticker.getAsLong() - record.writeTime >= expireAfterWriteNanos) {
+                offHeapTier.invalidate(key, record.address);
+                return null;
+            }
+            V value = valueCodec.decode(record.bytes);
+            Installation<K, V> installation = new Installation<>();
+            SoftDataNode<K, V> current = super.compute(key, (k, old) -> {
+                if (Objects.nonNull(old) && Objects.nonNull(old.get())) {
+                    V existing = liveValue(old);
+                    if (Objects.nonNull(existing)) {
+                        installation.winner = existing;
+                        return old;
+                    }
+                    //the live node has expired, so its record has expired too
+                    offHeapTier.invalidate(k);
+                    installation.replaced = old;
+                    return null;
+                }
+                if (!offHeapTier.isLatest(k, record.address)) {
+                    installation.outdated = true;
+                    return old;
+                }
+                SoftDataNode<K, V> node = newNode(k, value);
+                restoreWriteTime(node, record.writeTime);
+                installation.winner = value;
+                installation.replaced = old;
+                installation.installed = true;
+                return node;
+            });
+            if (installation.outdated) {
+                continue;
+            }
+            if (installation.installed) {
+                afterWrite(current, installation.replaced);
+            } else if (Objects.nonNull(installation.replaced)) {
+                afterRemoval(installation.replaced, causeOfReplacing(installation.replaced));
+            }
+            return installation.winner;
+        }
+    }
+
+    private long writeTimeOf(SoftDataNode<K, V> node) {
+        return recordsTime ? ((ManagedDataNode<K, V>) node).writeTime : 0L;
+    }
+
+    private void refreshAsync(ManagedDataNode<K, V> node) {
+        try {
+            executor.execute(() -> refresh(node));
+        } catch (RejectedExecutionException ex) {
+            //the stale value is kept, and the next read retries
+            node.stopRefreshing();
+        }
+    }
+
+    /**
+     * Reloads the value of the stale node and replaces the node if it is still mapped, the refreshed value is dropped
+     * if the key is written or removed meanwhile. A failure is reported to the uncaught exception handler of the
+     * current thread rather than thrown, because the executor, likes a CompletableFuture, may swallow it.
+     */
+    private void refresh(ManagedDataNode<K, V> node) {
+        K key = node.getIndex();
+        V value;
+        try {
+            value = load(key, loader);
+        } catch (Throwable ex) {
+            //the stale value is kept, and the reads retry after another interval rather than at once
+            node.failRefreshing(ticker.getAsLong());
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+            return;
+        }
+        long writeTime = ticker.getAsLong();
+        long address = Objects.nonNull(offHeapTier) && Objects.nonNull(value)
+                ? writeRecord(key, value, writeTime) : OffHeapTier.NO_ADDRESS;
+        Installation<K, V> installation = new Installation<>();
+        SoftDataNode<K, V> current = super.compute(key, (k, old) -> {
+            if (old != node) {
+                if (Objects.nonNull(offHeapTier)) {
+                    offHeapTier.invalidate(k, address);
+                }
+                return old;
+            }
+            installation.replaced = old;
+            if (Objects.isNull(value)) {
+                if (Objects.nonNull(offHeapTier)) {
+                    offHeapTier.invalidate(k);
+                }
+                return null;
+            }
+            installation.installed = true;
+            SoftDataNode<K, V> refreshed = newNode(k, value, node.tags);
+            restoreWriteTime(refreshed, writeTime);
+            if (Objects.nonNull(offHeapTier)) {
+                keepRecord(k, address);
+            }
+            return refreshed;
+        });
+        if (installation.installed) {
+            afterWrite(current, installation.replaced);
+        } else if (Objects.nonNull(installation.replaced)) {
+            afterRemoval(installation.replaced, RemovalCause.EXPLICIT);
+        }
+    }
+
+    private void afterRemoval(SoftDataNode<K, V> node, RemovalCause cause) {
+        if (Objects.nonNull(policy)) {
+            policy.afterRemoval(node);
+        }
+        if (Objects.nonNull(timerWheel) && node instanceof ManagedDataNode) {
+            timerWheel.deschedule((ManagedDataNode<K, V>) node);
+        }
+        if (Objects.nonNull(hotSet) && node instanceof ManagedDataNode) {
+            hotSet.remove((ManagedDataNode<K, V>) node);
+        }
+        if (isTagged(node)) {
+            untag((ManagedDataNode<K, V>) node);
+        }
+        if (Objects.nonNull(nearCache)) {
+            nearCache.invalidate(node.getIndex());
+        }
+        if (Objects.nonNull(removalNotifier)) {
+            publishRemoval(node, cause);
+        }
+    }
+
+    private void publishRemoval(SoftDataNode<K, V> node, RemovalCause cause) {
+        removalNotifier.publish(node.getIndex(), node.get(), cause);
+    }
+
+    /**
+     * Decides why the node is replaced, the write over a collected, stale or expired node doesn't replace a live value
+     */
+    private RemovalCause causeOfReplacing(SoftDataNode<K, V> old) {
+        if (Objects.isNull(old.get())) {
+            return RemovalCause.COLLECTED;
+        }
+        if (isStale(old)) {
+            return RemovalCause.EXPLICIT;
+        }
+        if (Objects.nonNull(timerWheel) && hasExpired((ManagedDataNode<K, V>) old, ticker.getAsLong())) {
+            return RemovalCause.EXPIRED;
+        }
+        return RemovalCause.REPLACED;
+    }
+
+    private boolean isStale(SoftDataNode<K, V> node) {
+        return managed && ((ManagedDataNode<K, V>) node).generation != generation;
+    }
+
+    private boolean hasExpired(ManagedDataNode<K, V> node, long now) {
+        return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    /**
+     * Returns the value of the node if it is neither collected, expired nor stale, the views never count as reads.
+     */
+    private V liveValue(SoftDataNode<K, V> node) {
+        V value = node.get();
+        if (Objects.nonNull(value) && (isStale(node) || (Objects.nonNull(timerWheel)
+                && hasExpired((ManagedDataNode<K, V>) node, ticker.getAsLong())))) {
+            return null;
+        }
+        return value;
+    }
+
+    private long deadlineOf(ManagedDataNode<K, V> node) {
+        if (expireAfterWriteNanos <= 0) {
+            return node.accessTime + expireAfterAccessNanos;
+        }
+        if (expireAfterAccessNanos <= 0) {
+            return node.writeTime + expireAfterWriteNanos;
+        }
+        return Math.min(node.writeTime + expireAfterWriteNanos, node.accessTime + expireAfterAccessNanos);
+    }
+
+    /**
+     * Installs the value if the key is absent or its value has been collected by GC
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the winner, it is the existing value if the key is present
+     */
+    private V installIfAbsent(K key, V value) {
+        long address = OffHeapTier.NO_ADDRESS;
+        long writeTime = recordsTime ? ticker.getAsLong() : 0L;
+        if (Objects.nonNull(offHeapTier)) {
+            //the value is only encoded if it is likely installed, the record of a live node is kept
+            SoftDataNode<K, V> present = this.get(key);
+            V existing = Objects.nonNull(present) ? liveValue(present) : null;
+            if (Objects.nonNull(existing)) {
+                return existing;
+            }
+            address = writeRecord(key, value, writeTime);
+        }
+        long recordAddress = address;
+        Installation<K, V> installation = new Installation<>();
+        SoftDataNode<K, V> current = super.compute(key, (k, old) -> {
+            V existing = Objects.nonNull(old) ? liveValue(old) : null;
+            if (Objects.nonNull(existing)) {
+                if (Objects.nonNull(offHeapTier)) {
+                    offHeapTier.invalidate(k, recordAddress);
+                }
+                installation.winner = existing;
+                return old;
+            }
+            installation.winner = value;
+            installation.replaced = old;
+            installation.installed = true;
+            SoftDataNode<K, V> node = newNode(k, value);
+            if (Objects.nonNull(offHeapTier)) {
+                restoreWriteTime(node, writeTime);
+                keepRecord(k, recordAddress);
+            }
+            return node;
+        });
+        if (installation.installed) {
+            afterWrite(current, installation.replaced);
+        }
+        return installation.winner;
+    }
+
+    private static <V> V waitFor(CompletableFuture<V> loading) {
+        try {
+            return loading.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    private void startReclaiming() {
+        startReclaiming(null);
+    }
+
+    /**
+     * Registers the map to ReferenceReaper, which also runs the release hook after the map is collected
+     *
+     * @param release the hook, nullable
+     */
+    private void startReclaiming(Runnable release) {
+        if (reclaimMode == ReclaimMode.BACKGROUND) {
+            ReferenceReaper.register(this, SoftConcurrentHashMap::reclaim, reclaimBatchSize, release);
+        } else if (Objects.nonNull(release)) {
+            //the collected nodes are reclaimed on write, the registration only runs the hook
+            ReferenceReaper.register(this, (map, batchSize) -> false, reclaimBatchSize, release);
+        }
+    }
+
+    /**
+     * Discovers the collected nodes from the referenceQueue and removes at most batchSize of them
+     *
+     * @param batchSize the maximum number of nodes to remove
+     * @return true if there are more collected nodes to remove
+     */
+    boolean reclaim(int batchSize) {
+        if (Objects.isNull(statsCounter)) {
+            return drain(batchSize);
+        }
+        long startTime = System.nanoTime();
+        try {
+            return drain(batchSize);
+        } finally {
+            statsCounter.recordReclaim(System.nanoTime() - startTime);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean drain(int batchSize) {
+        if (Objects.nonNull(timerWheel)) {
+            for (ManagedDataNode<K, V> expired : timerWheel.advance(ticker.getAsLong())) {
+                if (removeNode(expired.getIndex(), expired, RemovalCause.EXPIRED) && Objects.nonNull(statsCounter)) {
+                    statsCounter.recordExpiration();
+                }
+            }
+        }
+        //polling is cheap and contends with nobody, so it discovers twice as many nodes as it removes
+        int discovered = 0;
+        for (; discovered < batchSize * 2; discovered++) {
+            SoftDataNode<K, V> collected = (SoftDataNode<K, V>) referenceQueue.poll();
+            if (Objects.isNull(collected)) {
+                break;
+            }
+            collectedNodes.offer(collected);
+            reclaimBacklog.increment();
+        }
+        if (discovered > 0 && Objects.nonNull(statsCounter)) {
+            statsCounter.recordCollected(discovered);
+        }
+        for (int i = 0; i < batchSize; i++) {
+            SoftDataNode<K, V> collected = collectedNodes.poll();
+            if (Objects.isNull(collected)) {
+                return false;
+            }
+            reclaimBacklog.decrement();
+            //the key may be mapped to a new node, so it only removes the collected one
+            discard(collected.getIndex(), collected, RemovalCause.COLLECTED);
+        }
+        return !collectedNodes.isEmpty();
+    }
+
+    /**
+     * SoftDataNode
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    public static class SoftDataNode<K, V> extends SoftReference<V> {
+        /**
+         * the index with which the specified value is to be associated
+         */
+        private final K index;
+
+        /**
+         * Constructor
+         *
+         * @param index node's index
+         * @param data  node's value
+         */
+        public SoftDataNode(K index, V data) {
+            super(data);
+            this.index = index;
+        }
+
+        /**
+         * Constructor
+         *
+         * @param index node's index
+         * @param data  node's value
+         * @param q     ReferenceQueue
+         */
+        public SoftDataNode(K index, V data, ReferenceQueue<? super V> q) {
+            super(data, q);
+            this.index = index;
+        }
+
+        /**
+         * Get the index
+         *
+         * @return the index
+         */
+        public K getIndex() {
+            return index;
+        }
+    }
+
+    /**
+     * Builder is used to construct a SoftConcurrentHashMap with the optional features.
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    public static final class Builder<K, V> {
+        private int initialCapacity = 16;
+        private long maximumSize = -1;
+        private long maximumWeight = -1;
+        private Weigher<? super K, ? super V> weigher;
+        private ReclaimMode reclaimMode = ReclaimMode.BACKGROUND;
+        private int reclaimBatchSize = DEFAULT_RECLAIM_BATCH_SIZE;
+        private Function<? super K, ? extends V> loader;
+        private long expireAfterWriteNanos;
+        private long expireAfterAccessNanos;
+        private LongSupplier ticker = System::nanoTime;
+        private long refreshAfterWriteNanos;
+        private Executor executor;
+        private boolean shedsOnMemoryPressure;
+        private double shedThresholdRatio;
+        private int strongHotSetCapacity;
+        private int nearCacheCapacity;
+        private RemovalListener<? super K, ? super V> removalListener;
+        private boolean recordStats;
+        private String statsMBeanName;
+        private ValueCodec<V> valueCodec;
+        private long offHeapCapacity;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of elements you expect the container to hold
+         *
+         * @param initialCapacity the initial capacity
+         * @return Builder
+         */
+        public Builder<K, V> initialCapacity(int initialCapacity) {
+            if (initialCapacity < 0) {
+                throw new IllegalArgumentException("the initialCapacity is negative: " + initialCapacity);
+            }
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * Bounds the map by the number of entries, the entries are evicted by W-TinyLFU when the size exceeds it.
+         *
+         * @param maximumSize the maximum number of entries
+         * @return Builder
+         */
+        public Builder<K, V> maximumSize(long maximumSize) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException("the maximumSize is negative: " + maximumSize);
+            }
+            if (this.maximumWeight >= 0) {
+                throw new IllegalStateException("the maximum size or weight was already set to " + this.maximumWeight);
+            }
+            this.maximumSize = maximumSize;
+            this.maximumWeight = maximumSize;
+            return this;
+        }
+
+        /**
+         * Bounds the map by the total weight of entries, it must be used with a weigher.
+         *
+         * @param maximumWeight the maximum weight
+         * @return Builder
+         */
+        public Builder<K, V> maximumWeight(long maximumWeight) {
+            if (maximumWeight < 0) {
+                throw new IllegalArgumentException("the maximumWeight is negative: " + maximumWeight);
+            }
+            if (this.maximumWeight >= 0) {
+                throw new IllegalStateException("the maximum size or weight was already set to " + this.maximumWeight);
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * Sets the weigher which calculates the weight of each entry
+         *
+         * @param weigher the weigher
+         * @return Builder
+         */
+        public Builder<K, V> weigher(Weigher<? super K, ? super V> weigher) {
+            this.weigher = Objects.requireNonNull(weigher, "requires a non-null weigher");
+            return this;
+        }
+
+        /**
+         * Each entry expires after the duration has elapsed since it was put
+         *
+         * @param duration the duration
+         * @param unit     the unit of duration
+         * @return Builder
+         */
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = toPositiveNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * Each entry expires after the duration has elapsed since it was put or read lastly
+         *
+         * @param duration the duration
+         * @param unit     the unit of duration
+         * @return Builder
+         */
+        public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+            this.expireAfterAccessNanos = toPositiveNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * Sets the duration after writing that an entry is stale, the first read of a stale entry still returns the
+         * current value and triggers one reloading by the loader in background, and the other reads keep returning
+         * the current value until the reloading completes. A failed reloading keeps the current value, it is reported
+         * to the uncaught exception handler of the thread which runs it and retried after another duration. It
+         * requires the loader.
+         *
+         * @param duration the duration
+         * @param unit     the unit of duration
+         * @return Builder
+         */
+        public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+            this.refreshAfterWriteNanos = toPositiveNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * Sets the executor which runs the refreshing and delivers the removal notifications, defaults
+         * ForkJoinPool.commonPool().
+         *
+         * @param executor the executor
+         * @return Builder
+         */
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "requires a non-null executor");
+            return this;
+        }
+
+        /**
+         * Sets the listener notified when an entry is removed for any cause, including the collection of its value by
+         * GC. The notifications are queued without any lock and delivered in batches on the executor, so the listener
+         * never runs on the thread which removes the entry. The entries invalidated by invalidateAll() are notified
+         * when they are discarded lazily.
+         *
+         * @param listener the listener
+         * @return Builder
+         */
+        public Builder<K, V> removalListener(RemovalListener<? super K, ? super V> listener) {
+            this.removalListener = Objects.requireNonNull(listener, "requires a non-null listener");
+            return this;
+        }
+
+        /**
+         * Sets the source of time in nanoseconds, it is used to test the expiration.
+         *
+         * @param ticker the source of time
+         * @return Builder
+         */
+        Builder<K, V> ticker(LongSupplier ticker) {
+            this.ticker = Objects.requireNonNull(ticker, "requires a non-null ticker");
+            return this;
+        }
+
+        private static long toPositiveNanos(long duration, TimeUnit unit) {
+            Objects.requireNonNull(unit, "requires a non-null unit");
+            if (duration <= 0) {
+                throw new IllegalArgumentException("the duration must be positive: " + duration);
+            }
+            return unit.toNanos(duration);
+        }
+
+        /**
+         * Sets the loader used by getOrLoad
+         *
+         * @param loader the loader
+         * @return Builder
+         */
+        public Builder<K, V> loader(Function<? super K, ? extends V> loader) {
+            this.loader = Objects.requireNonNull(loader, "requires a non-null loader");
+            return this;
+        }
+
+        /**
+         * Caches up to capacity nodes per thread in front of the shared table, so that the repeated reads of a hot key
+         * by a thread avoid the shared memory. A cached node is invalidated by a stamp of its stripe of keys which is
+         * advanced on writes and removals, and about one of 16 near hits is replayed to the policy and the hot set.
+         * <p>
+         * It pays off when the reads are bookkept by the maximumSize, maximumWeight or strongHotSet on many cores,
+         * because a plain read of the table writes no shared memory and is cheaper than the lookup of a ThreadLocal.
+         * The near hits never update the access time, so it can't be combined with expireAfterAccess,
+         * refreshAfterWrite or shedOnMemoryPressure.
+         *
+         * @param capacity the maximum number of nodes cached by each thread
+         * @return Builder
+         */
+        public Builder<K, V> nearCache(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("the capacity of near cache must be positive: " + capacity);
+            }
+            this.nearCacheCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Keeps the values of about capacity hottest entries strongly reachable, so GC only clears the colder values.
+         * The entries compete for the slots by their hits on read without any lock, and an entry falling out of the
+         * hot set is referenced softly again.
+         *
+         * @param capacity the maximum number of entries referenced strongly
+         * @return Builder
+         */
+        public Builder<K, V> strongHotSet(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("the capacity of hot set must be positive: " + capacity);
+            }
+            this.strongHotSetCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sheds the entries accessed least recently when the old generation is about to fill up, before GC clears
+         * the soft references all at once. The shedding is gradual and rate-limited, see MemoryPressureShedder.
+         * <p>
+         * It is triggered by the usage thresholds of the heap pools, see
+         * {@link java.lang.management.MemoryPoolMXBean#setUsageThreshold(long)}. They are global to the JVM, so this
+         * method never sets them and nothing is shed unless the application has set them, otherwise use
+         * {@link #shedOnMemoryPressure(double)}.
+         *
+         * @return Builder
+         */
+        public Builder<K, V> shedOnMemoryPressure() {
+            this.shedsOnMemoryPressure = true;
+            return this;
+        }
+
+        /**
+         * Sheds the entries like {@link #shedOnMemoryPressure()}, and opts in to setting the usage threshold and the
+         * collection usage threshold of each heap pool to thresholdRatio of its maximum when the map is built. The
+         * thresholds are global to the JVM, they are shared with the other users of the MemoryPoolMXBean and never
+         * reset, and the ones which have been set, likes by the application or its monitoring, are kept.
+         *
+         * @param thresholdRatio the ratio of the maximum of each heap pool, likes 0.85
+         * @return Builder
+         */
+        public Builder<K, V> shedOnMemoryPressure(double thresholdRatio) {
+            if (!(thresholdRatio > 0 && thresholdRatio < 1)) {
+                throw new IllegalArgumentException("the thresholdRatio must be between 0 and 1: " + thresholdRatio);
+            }
+            this.shedThresholdRatio = thresholdRatio;
+            this.shedsOnMemoryPressure = true;
+            return this;
+        }
+
+        /**
+         * Enables the off-heap tier which keeps the values encoded by the codec in direct memory of at most capacity
+         * bytes. Each write is also written to the tier, so a value collected by GC or evicted by the bound is
+         * promoted on the next lookup instead of being reloaded. The tier drops its oldest records once it is full,
+         * and the views of the map only see the values on heap.
+         *
+         * @param codec    the codec which converts the values to bytes and back
+         * @param capacity the maximum bytes of direct memory used by the tier
+         * @return Builder
+         */
+        public Builder<K, V> offHeap(ValueCodec<V> codec, long capacity) {
+            this.valueCodec = Objects.requireNonNull(codec, "requires a non-null codec");
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("the capacity of off-heap tier must be positive: " + capacity);
+            }
+            this.offHeapCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Enables recording the statistics which are returned by {@link SoftConcurrentHashMap#stats()}
+         *
+         * @return Builder
+         */
+        public Builder<K, V> recordStats() {
+            this.recordStats = true;
+            return this;
+        }
+
+        /**
+         * Enables recording the statistics and exposes them as a CacheStatsMXBean on the platform MBeanServer, whose
+         * ObjectName is com.xasync.island:type=SoftConcurrentHashMap,name="name". The bean never pins the map, and it
+         * fails to build if the name is still registered by another map which is neither closed nor collected.
+         *
+         * @param name the name of the map
+         * @return Builder
+         */
+        public Builder<K, V> recordStats(String name) {
+            this.statsMBeanName = Objects.requireNonNull(name, "requires a non-null name");
+            this.recordStats = true;
+            return this;
+        }
+
+        /**
+         * Sets who removes the nodes whose values have been collected by GC, defaults BACKGROUND.
+         *
+         * @param reclaimMode the reclaim mode
+         * @return Builder
+         */
+        public Builder<K, V> reclaimMode(ReclaimMode reclaimMode) {
+            this.reclaimMode = Objects.requireNonNull(reclaimMode, "requires a non-null reclaimMode");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of collected nodes removed each time, defaults 64.
+         *
+         * @param reclaimBatchSize the batch size
+         * @return Builder
+         */
+        public Builder<K, V> reclaimBatchSize(int reclaimBatchSize) {
+            if (reclaimBatchSize <= 0) {
+                throw new IllegalArgumentException("the reclaimBatchSize must be positive: " + reclaimBatchSize);
+            }
+            this.reclaimBatchSize = reclaimBatchSize;
+            return this;
+        }
+
+        /**
+         * Builds the SoftConcurrentHashMap
+         *
+         * @return SoftConcurrentHashMap
+         */
+        public SoftConcurrentHashMap<K, V> build() {
+            if (Objects.nonNull(weigher) && (maximumWeight < 0 || maximumSize >= 0)) {
+                throw new IllegalStateException("the weigher requires the maximumWeight");
+            }
+            if (Objects.isNull(weigher) && maximumWeight >= 0 && maximumSize < 0) {
+                throw new IllegalStateException("the maximumWeight requires a weigher");
+            }
+            if (refreshAfterWriteNanos > 0 && Objects.isNull(loader)) {
+                throw new IllegalStateException("the refreshAfterWrite requires a loader");
+            }
+            if (nearCacheCapacity > 0 && (expireAfterAccessNanos > 0 || refreshAfterWriteNanos > 0
+                    || shedsOnMemoryPressure)) {
+                throw new IllegalStateException("the nearCache can't track the access time");
+            }
+            return new SoftConcurrentHashMap<>(this);
+        }
+    }
+
+    /**
+     * HotEntry is an entry ranked by the access time captured when it is visited
+     */
+    private static class HotEntry<K, V> extends AbstractMap.SimpleImmutableEntry<K, V> {
+        private final static long serialVersionUID = 1L;
+        private final long accessTime;
+
+        HotEntry(K key, V value, long accessTime) {
+            super(key, value);
+            this.accessTime = accessTime;
+        }
+    }
+
+    /**
+     * The result of installIfAbsent
+     */
+    private static class Installation<K, V> {
+        private V winner;
+        private SoftDataNode<K, V> replaced;
+        private boolean installed;
+        private boolean outdated;
+    }
+
+    /**
+     * NodesView
+     */
+    private final class NodesView extends AbstractCollection<SoftDataNode<K, V>> {
+
+        @Override
+        public Iterator<SoftDataNode<K, V>> iterator() {
+            Iterator<SoftDataNode<K, V>> nodes = SoftConcurrentHashMap.super.values().iterator();
+            return new Iterator<SoftDataNode<K, V>>() {
+                private SoftDataNode<K, V> last;
+
+                @Override
+                public boolean hasNext() {
+                    return nodes.hasNext();
+                }
+
+                @Override
+                public SoftDataNode<K, V> next() {
+                    last = nodes.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (Objects.isNull(last)) {
+                        throw new IllegalStateException();
+                    }
+                    removeNode(last.getIndex(), last, RemovalCause.EXPLICIT);
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<SoftDataNode<K, V>> spliterator() {
+            return SoftConcurrentHashMap.super.values().spliterator();
+        }
+
+        @Override
+        public int size() {
+            return SoftConcurrentHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return SoftConcurrentHashMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return Objects.nonNull(o) && SoftConcurrentHashMap.this.containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            SoftConcurrentHashMap.this.clear();
+        }
+    }
+
+    /**
+     * EntriesView
+     */
+    private final class EntriesView extends AbstractSet<Entry<K, SoftDataNode<K, V>>> {
+
+        @Override
+        public Iterator<Entry<K, SoftDataNode<K, V>>> iterator() {
+            Iterator<Entry<K, SoftDataNode<K, V>>> entries = SoftConcurrentHashMap.super.entrySet().iterator();
+            return new Iterator<Entry<K, SoftDataNode<K, V>>>() {
+                private Entry<K, SoftDataNode<K, V>> last;
+
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Entry<K, SoftDataNode<K, V>> next() {
+                    last = entries.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    if (Objects.isNull(last)) {
+                        throw new IllegalStateException();
+                    }
+                    removeNode(last.getKey(), last.getValue(), RemovalCause.EXPLICIT);
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public Spliterator<Entry<K, SoftDataNode<K, V>>> spliterator() {
+            return SoftConcurrentHashMap.super.entrySet().spliterator();
+        }
+
+        @Override
+        public int size() {
+            return SoftConcurrentHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return SoftConcurrentHashMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return SoftConcurrentHashMap.super.entrySet().contains(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            //the map never contains a null key or value, and ConcurrentHashMap rejects looking them up
+            if (!(o instanceof Entry) || Objects.isNull(((Entry<?, ?>) o).getKey())
+                    || Objects.isNull(((Entry<?, ?>) o).getValue())) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            return SoftConcurrentHashMap.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            SoftConcurrentHashMap.this.clear();
+        }
+    }
+
+    /**
+     * ValuesOnSoftView
+     */
+    private final class ValuesOnSoftView extends AbstractCollection<V> {
+
+        @Override
+        public Iterator<V> iterator() {
+            return new LiveIterator<>((k, v) -> v);
+        }
+
+        @Override
+        public Spliterator<V> spliterator() {
+            return new LiveSpliterator<>(SoftConcurrentHashMap.this.values().spliterator(), (k, v) -> v);
+        }
+
+        @Override
+        public int size() {
+            return SoftConcurrentHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public void clear() {
+            SoftConcurrentHashMap.this.clear();
+        }
+    }
+
+    /**
+     * EntrySetOnSoftView
+     */
+    private final class EntrySetOnSoftView extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new LiveIterator<>(AbstractMap.SimpleImmutableEntry::new);
+        }
+
+        @Override
+        public Spliterator<Entry<K, V>> spliterator() {
+            return spliteratorOnSoft();
+        }
+
+        @Override
+        public int size() {
+            return SoftConcurrentHashMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            //the map never contains a null key, and ConcurrentHashMap rejects looking it up
+            if (!(o instanceof Entry) || Objects.isNull(((Entry<?, ?>) o).getKey())) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            SoftDataNode<K, V> node = SoftConcurrentHashMap.this.get(entry.getKey());
+            V value = Objects.nonNull(node) ? liveValue(node) : null;
+            return Objects.nonNull(value) && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            //the map never contains a null key, and ConcurrentHashMap rejects looking it up
+            if (!(o instanceof Entry) || Objects.isNull(((Entry<?, ?>) o).getKey())) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            SoftDataNode<K, V> node = SoftConcurrentHashMap.this.get(entry.getKey());
+            V value = Objects.nonNull(node) ? liveValue(node) : null;
+            return Objects.nonNull(value) && value.equals(entry.getValue())
+                    && SoftConcurrentHashMap.this.remove(entry.getKey(), node);
+        }
+
+        @Override
+        public void clear() {
+            SoftConcurrentHashMap.this.clear();
+        }
+    }
+
+    /**
+     * LiveIterator walks the nodes and skips the collected or expired ones, the key is taken from the node itself.
+     *
+     * @param <T> the type of element
+     */
+    private final class LiveIterator<T> implements Iterator<T> {
+        private final Iterator<SoftDataNode<K, V>> nodes = SoftConcurrentHashMap.this.values().iterator();
+        private final BiFunction<K, V, T> mapper;
+        private SoftDataNode<K, V> nextNode;
+        private V nextValue;
+        private SoftDataNode<K, V> lastNode;
+
+        LiveIterator(BiFunction<K, V, T> mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (Objects.isNull(nextValue) && nodes.hasNext()) {
+                SoftDataNode<K, V> node = nodes.next();
+                V value = liveValue(node);
+                if (Objects.nonNull(value)) {
+                    nextNode = node;
+                    nextValue = value;
+                }
+            }
+            return Objects.nonNull(nextValue);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T element = mapper.apply(nextNode.getIndex(), nextValue);
+            lastNode = nextNode;
+            nextNode = null;
+            nextValue = null;
+            return element;
+        }
+
+        @Override
+        public void remove() {
+            if (Objects.isNull(lastNode)) {
+                throw new IllegalStateException();
+            }
+            SoftConcurrentHashMap.this.remove(lastNode.getIndex(), lastNode);
+            lastNode = null;
+        }
+    }
+
+    /**
+     * LiveSpliterator wraps the Spliterator of nodes and skips the collected or expired ones.
+     *
+     * @param <T> the type of element
+     */
+    private final class LiveSpliterator<T> implements Spliterator<T> {
+        private final Spliterator<SoftDataNode<K, V>> nodes;
+        private final BiFunction<K, V, T> mapper;
+
+        LiveSpliterator(Spliterator<SoftDataNode<K, V>> nodes, BiFunction<K, V, T> mapper) {
+            this.nodes = nodes;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action, "requires a non-null action");
+            boolean[] found = new boolean[1];
+            while (!found[0] && nodes.tryAdvance(node -> {
+                V value = liveValue(node);
+                if (Objects.nonNull(value)) {
+                    found[0] = true;
+                    action.accept(mapper.apply(node.getIndex(), value));
+                }
+            })) {
+                //skips the collected or expired nodes
+            }
+            return found[0];
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action, "requires a non-null action");
+            nodes.forEachRemaining(node -> {
+                V value = liveValue(node);
+                if (Objects.nonNull(value)) {
+                    action.accept(mapper.apply(node.getIndex(), value));
+                }
+            });
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            Spliterator<SoftDataNode<K, V>> split = nodes.trySplit();
+            return Objects.nonNull(split) ? new LiveSpliterator<>(split, mapper) : null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return nodes.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return (nodes.characteristics() | Spliterator.NONNULL) & ~(Spliterator.SIZED | Spliterator.SUBSIZED);
+        }
+    }
 }
@@ -0,0 +1,483 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * SoftMapSnapshot persists the hottest keys of a SoftConcurrentHashMap, optionally with their values, to a local file
+ * and reloads them when the application restarts, so the map is warm before the traffic arrives.
+ * <p>
+ * The file is written by FileChannel to a temporary file which replaces the snapshot atomically, so a crash never
+ * leaves a torn snapshot. It is a compact length-prefixed format:
+ * <pre>
+ *     [int magic][int version][int count] { [int keyLength][key] [int valueLength or -1][value] } * count
+ * </pre>
+ * The restoring puts the saved values directly, and loads the keys saved without values by the loader in parallel,
+ * the loads are throttled by a rate limit so that the backend isn't hammered by the warm-up either.
+ * <pre>
+ *     SoftMapSnapshot&lt;String, Order&gt; snapshot = SoftMapSnapshot.&lt;String, Order&gt;builder()
+ *          .map(orders)
+ *          .file(Paths.get("/data/orders.snapshot"))
+ *          .keyCodec(stringCodec)
+ *          .loader(orderRepository::find)
+ *          .loadsPerSecond(500)
+ *          .build();
+ *     snapshot.restore();
+ *     snapshot.schedule(scheduler, 5, TimeUnit.MINUTES);
+ * </pre>
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+public final class SoftMapSnapshot<K, V> {
+    private final static int MAGIC = 0x49534E50;
+    private final static int VERSION = 1;
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static int NO_VALUE = -1;
+
+    private final SoftConcurrentHashMap<K, V> map;
+    private final Path file;
+    private final ValueCodec<K> keyCodec;
+    private final ValueCodec<V> valueCodec;
+    private final Function<? super K, ? extends V> loader;
+    private final int maximumKeys;
+    private final int parallelism;
+    private final double loadsPerSecond;
+
+    private SoftMapSnapshot(Builder<K, V> builder) {
+        this.map = builder.map;
+        this.file = builder.file;
+        this.keyCodec = builder.keyCodec;
+        this.valueCodec = builder.valueCodec;
+        this.loader = builder.loader;
+        this.maximumKeys = builder.maximumKeys;
+        this.parallelism = builder.parallelism;
+        this.loadsPerSecond = builder.loadsPerSecond;
+    }
+
+    /**
+     * Creates a builder of SoftMapSnapshot
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     * @return Builder
+     */
+    public static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Writes the hottest entries of the map to the file, the values are written only if the valueCodec is set.
+     *
+     * @return the number of entries written
+     * @throws UncheckedIOException if the file can't be written
+     */
+    public int save() {
+        List<Map.Entry<K, V>> entries = map.hottestEntries(maximumKeys);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(entries.size());
+            for (Map.Entry<K, V> entry : entries) {
+                byte[] key = keyCodec.encode(entry.getKey());
+                byte[] value = Objects.nonNull(valueCodec) ? valueCodec.encode(entry.getValue()) : null;
+                int length = Integer.BYTES * 2 + key.length + (Objects.nonNull(value) ? value.length : 0);
+                if (buffer.remaining() < length) {
+                    flush(channel, buffer);
+                    if (buffer.capacity() < length) {
+                        buffer = ByteBuffer.allocate(length);
+                    }
+                }
+                buffer.putInt(key.length).put(key);
+                if (Objects.nonNull(value)) {
+                    buffer.putInt(value.length).put(value);
+                } else {
+                    buffer.putInt(NO_VALUE);
+                }
+            }
+            flush(channel, buffer);
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("fails to write the snapshot " + temporary, ex);
+        }
+        try {
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("fails to replace the snapshot " + file, ex);
+        }
+        return entries.size();
+    }
+
+    /**
+     * Saves the snapshot periodically on the scheduler, a failed saving is reported to the uncaught exception handler
+     * of the scheduler thread and the next one is still scheduled.
+     *
+     * @param scheduler the scheduler
+     * @param period    the period between two savings
+     * @param unit      the time unit of period
+     * @return the future to cancel the savings
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                save();
+            } catch (RuntimeException ex) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Reloads the snapshot into the map and blocks until it is done. The saved values are put directly, and the keys
+     * without values are loaded by the loader in parallel under the rate limit. A key which is already present or
+     * fails to load is skipped.
+     *
+     * @return the number of entries restored, it is 0 if the file doesn't exist
+     * @throws UncheckedIOException     if the file can't be read
+     * @throws IllegalArgumentException if the file isn't a snapshot or is corrupted
+     */
+    public int restore() {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        List<K> keysToLoad = new ArrayList<>();
+        int restored = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.flip();
+            buffer = fill(channel, buffer, Integer.BYTES * 3);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalArgumentException("the file isn't a snapshot of version " + VERSION + ": " + file);
+            }
+            int count = buffer.getInt();
+            //each record has two lengths at least
+            lengthOf((long) count * Integer.BYTES * 2, channel, buffer);
+            for (int i = 0; i < count; i++) {
+                buffer = fill(channel, buffer, Integer.BYTES);
+                byte[] key = new byte[lengthOf(buffer.getInt(), channel, buffer)];
+                buffer = fill(channel, buffer, key.length + Integer.BYTES);
+                buffer.get(key);
+                int valueLength = buffer.getInt();
+                byte[] value = null;
+                if (valueLength != NO_VALUE) {
+                    value = new byte[lengthOf(valueLength, channel, buffer)];
+                    buffer = fill(channel, buffer, valueLength);
+                    buffer.get(value);
+                }
+                K decodedKey = keyCodec.decode(key);
+                if (Objects.nonNull(value) && Objects.nonNull(valueCodec)) {
+                    map.putAsSoftIfAbsent(decodedKey, valueCodec.decode(value));
+                    restored++;
+                } else if (Objects.nonNull(loader)) {
+                    keysToLoad.add(decodedKey);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("fails to read the snapshot " + file, ex);
+        }
+        return restored + load(keysToLoad);
+    }
+
+    /**
+     * Loads the keys by a pool of parallelism threads, each load waits for a permit of the rate limiter
+     */
+    private int load(List<K> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        RateLimiter limiter = loadsPerSecond > 0 ? new RateLimiter(loadsPerSecond) : null;
+        AtomicInteger cursor = new AtomicInteger();
+        AtomicInteger loaded = new AtomicInteger();
+        int workers = Math.min(parallelism, keys.size());
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "island-snapshot-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[workers];
+            for (int w = 0; w < workers; w++) {
+                tasks[w] = CompletableFuture.runAsync(() -> {
+                    for (int i = cursor.getAndIncrement(); i < keys.size(); i = cursor.getAndIncrement()) {
+                        K key = keys.get(i);
+                        if (Objects.nonNull(map.getOnSoft(key))) {
+                            continue;
+                        }
+                        if (Objects.nonNull(limiter)) {
+                            limiter.acquire();
+                        }
+                        if (loadQuietly(key)) {
+                            loaded.incrementAndGet();
+                        }
+                    }
+                }, pool);
+            }
+            CompletableFuture.allOf(tasks).join();
+        } finally {
+            pool.shutdown();
+        }
+        return loaded.get();
+    }
+
+    private boolean loadQuietly(K key) {
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException ex) {
+            //the key is skipped, the warm-up is best-effort
+            return false;
+        }
+        if (Objects.isNull(value)) {
+            return false;
+        }
+        map.putAsSoftIfAbsent(key, value);
+        return true;
+    }
+
+    /**
+     * Checks a length read from the file against the bytes left, so a corrupted length never allocates a huge array
+     */
+    private int lengthOf(long length, FileChannel channel, ByteBuffer buffer) throws IOException {
+        if (length < 0 || length > channel.size() - channel.position() + buffer.remaining()) {
+            throw new IllegalArgumentException("the snapshot is corrupted: " + file);
+        }
+        return (int) length;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Makes sure that the buffer in read mode has at least the required bytes, the buffer is grown if it is smaller
+     *
+     * @return the buffer in read mode, it may be a new one
+     */
+    private ByteBuffer fill(FileChannel channel, ByteBuffer buffer, int required) throws IOException {
+        if (buffer.remaining() >= required) {
+            return buffer;
+        }
+        ByteBuffer target = buffer;
+        if (buffer.capacity() < required) {
+            target = ByteBuffer.allocate(required);
+            target.put(buffer);
+        } else {
+            buffer.compact();
+        }
+        while (target.position() < required) {
+            if (channel.read(target) < 0) {
+                throw new IllegalArgumentException("the snapshot is truncated: " + file);
+            }
+        }
+        target.flip();
+        return target;
+    }
+
+    /**
+     * RateLimiter hands out permits at a fixed interval, the permits aren't saved up while nobody acquires them.
+     */
+    private static class RateLimiter {
+        private final long intervalNanos;
+        private final AtomicLong nextFree = new AtomicLong(System.nanoTime());
+
+        RateLimiter(double permitsPerSecond) {
+            this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        }
+
+        void acquire() {
+            long now = System.nanoTime();
+            long slot;
+            while (true) {
+                long next = nextFree.get();
+                slot = next - now < 0 ? now : next;
+                if (nextFree.compareAndSet(next, slot + intervalNanos)) {
+                    break;
+                }
+            }
+            for (long wait = slot - System.nanoTime(); wait > 0; wait = slot - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /**
+     * The builder of SoftMapSnapshot
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    public static final class Builder<K, V> {
+        private SoftConcurrentHashMap<K, V> map;
+        private Path file;
+        private ValueCodec<K> keyCodec;
+        private ValueCodec<V> valueCodec;
+        private Function<? super K, ? extends V> loader;
+        private int maximumKeys = 10_000;
+        private int parallelism = 4;
+        private double loadsPerSecond;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the map to save and restore, it is required
+         *
+         * @param map the map
+         * @return Builder
+         */
+        public Builder<K, V> map(SoftConcurrentHashMap<K, V> map) {
+            this.map = Objects.requireNonNull(map, "requires a non-null map");
+            return this;
+        }
+
+        /**
+         * Sets the file of snapshot, it is required
+         *
+         * @param file the file
+         * @return Builder
+         */
+        public Builder<K, V> file(Path file) {
+            this.file = Objects.requireNonNull(file, "requires a non-null file");
+            return this;
+        }
+
+        /**
+         * Sets the codec of keys, it is required
+         *
+         * @param keyCodec the codec of keys
+         * @return Builder
+         */
+        public Builder<K, V> keyCodec(ValueCodec<K> keyCodec) {
+            this.keyCodec = Objects.requireNonNull(keyCodec, "requires a non-null keyCodec");
+            return this;
+        }
+
+        /**
+         * Saves the values with the keys, so the restoring doesn't have to load them
+         *
+         * @param valueCodec the codec of values
+         * @return Builder
+         */
+        public Builder<K, V> valueCodec(ValueCodec<V> valueCodec) {
+            this.valueCodec = Objects.requireNonNull(valueCodec, "requires a non-null valueCodec");
+            return this;
+        }
+
+        /**
+         * Sets the loader of the keys saved without values
+         *
+         * @param loader the loader, it returns null if the key no longer exists
+         * @return Builder
+         */
+        public Builder<K, V> loader(Function<? super K, ? extends V> loader) {
+            this.loader = Objects.requireNonNull(loader, "requires a non-null loader");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of hottest keys saved, defaults 10000
+         *
+         * @param maximumKeys the maximum number of keys
+         * @return Builder
+         */
+        public Builder<K, V> maximumKeys(int maximumKeys) {
+            if (maximumKeys <= 0) {
+                throw new IllegalArgumentException("the maximumKeys must be positive: " + maximumKeys);
+            }
+            this.maximumKeys = maximumKeys;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads which load the keys when restoring, defaults 4
+         *
+         * @param parallelism the number of threads
+         * @return Builder
+         */
+        public Builder<K, V> parallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("the parallelism must be positive: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Limits the rate of loads when restoring, it is unlimited by default
+         *
+         * @param loadsPerSecond the maximum number of loads per second
+         * @return Builder
+         */
+        public Builder<K, V> loadsPerSecond(double loadsPerSecond) {
+            if (!(loadsPerSecond > 0)) {
+                throw new IllegalArgumentException("the loadsPerSecond must be positive: " + loadsPerSecond);
+            }
+            this.loadsPerSecond = loadsPerSecond;
+            return this;
+        }
+
+        /**
+         * Builds the snapshot
+         *
+         * @return SoftMapSnapshot
+         * @throws IllegalStateException if a required option is missing, or neither the valueCodec nor the loader is
+         *                               set
+         */
+        public SoftMapSnapshot<K, V> build() {
+            if (Objects.isNull(map) || Objects.isNull(file) || Objects.isNull(keyCodec)) {
+                throw new IllegalStateException("the map, file and keyCodec are required");
+            }
+            if (Objects.isNull(valueCodec) && Objects.isNull(loader)) {
+                throw new IllegalStateException("either the valueCodec or the loader is required to restore values");
+            }
+            return new SoftMapSnapshot<>(this);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * SoftProbingTable is the segmented open-addressing table shared by LongSoftConcurrentMap and
+ * CompactSoftConcurrentMap. Each segment is a table with linear probing which stores the soft references in an array,
+ * and the keys in a parallel array if the table stores keys. The readers probe the table under an optimistic stamp of
+ * StampedLock and fall back to the read lock only if a writer interferes, so that a lookup allocates nothing, and the
+ * deletion moves the following entries of the cluster backward instead of leaving tombstones.
+ * <p>
+ * A key is found by its hash and, if the table stores keys, by equals. A table which doesn't store keys requires the
+ * hash to identify the key, likes a bijective mix of a long key, so such a map never boxes its keys. Each reference
+ * remembers its hash, so the references collected by GC are removed by identity without knowing their keys.
+ *
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+final class SoftProbingTable<V> {
+    private final static float LOAD_FACTOR = 0.7f;
+
+    private final Segment<V>[] segments;
+    private final int segmentShift;
+    private final boolean storesKeys;
+
+    /**
+     * Declares the instance of ReferenceQueue for observing which values have been collected by GC
+     */
+    private final ReferenceQueue<V> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * Constructor
+     *
+     * @param initialCapacity  The number of elements you expect the table to hold
+     * @param concurrencyLevel the estimated number of concurrently updating threads.
+     * @param storesKeys       whether the keys are stored and compared by equals, or else the hash identifies the key
+     */
+    @SuppressWarnings("unchecked")
+    SoftProbingTable(int initialCapacity, int concurrencyLevel, boolean storesKeys) {
+        if (initialCapacity < 0 || concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("the initialCapacity must be non-negative and the concurrencyLevel " +
+                    "must be positive: " + initialCapacity + ", " + concurrencyLevel);
+        }
+        int segmentCount = ceilingPowerOfTwo(Math.min(concurrencyLevel, 1 << 16));
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        this.storesKeys = storesKeys;
+        this.segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        int segmentCapacity = Math.max(initialCapacity / segmentCount, 1);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentCapacity, storesKeys);
+        }
+    }
+
+    /**
+     * Returns the queue with which the references of this table are created
+     *
+     * @return ReferenceQueue
+     */
+    ReferenceQueue<V> referenceQueue() {
+        return referenceQueue;
+    }
+
+    /**
+     * Returns the reference mapped by the key, its value may have been collected
+     *
+     * @param key  the key, or null if the table doesn't store keys
+     * @param hash the hash of key
+     * @return the reference, or null if there is no mapping
+     */
+    Reference<V> get(Object key, long hash) {
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Maps the key to the reference, an existing mapping is only replaced if its value has been collected when
+     * onlyIfAbsent is true.
+     *
+     * @param key          the key, or null if the table doesn't store keys
+     * @param ref          the reference created with the queue of this table
+     * @param onlyIfAbsent whether a live mapping is kept
+     */
+    void put(Object key, Reference<V> ref, boolean onlyIfAbsent) {
+        segmentFor(ref.hash()).put(key, ref, onlyIfAbsent);
+    }
+
+    /**
+     * Removes the mapping of the key
+     *
+     * @param key  the key, or null if the table doesn't store keys
+     * @param hash the hash of key
+     * @return the removed reference, or null if there is no mapping
+     */
+    Reference<V> remove(Object key, long hash) {
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Removes at most batchSize mappings whose values have been collected by GC
+     *
+     * @param batchSize the maximum number of mappings to remove
+     * @return true if there are more collected references to remove
+     */
+    @SuppressWarnings("unchecked")
+    boolean reclaim(int batchSize) {
+        for (int i = 0; i < batchSize; i++) {
+            Reference<V> ref = (Reference<V>) referenceQueue.poll();
+            if (Objects.isNull(ref)) {
+                return false;
+            }
+            segmentFor(ref.hash()).remove(ref);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of mappings, it includes the mappings whose values are collected but not reclaimed yet.
+     *
+     * @return the number of mappings
+     */
+    int size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Visits each mapping whose value is not collected, it is weakly consistent.
+     *
+     * @param visitor the visitor
+     */
+    void forEach(EntryVisitor<V> visitor) {
+        for (Segment<V> segment : segments) {
+            Table<V> table = segment.table;
+            for (int i = 0; i < table.values.length; i++) {
+                Object key = storesKeys ? table.keys[i] : null;
+                Reference<V> ref = table.values[i];
+                V value = Objects.nonNull(ref) ? ref.get() : null;
+                //the key is null if the slot is being cleared by a writer
+                if (Objects.nonNull(value) && (!storesKeys || Objects.nonNull(key))) {
+                    visitor.visit(key, ref, value);
+                }
+            }
+        }
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        int h = (int) (hash ^ (hash >>> 32));
+        return segments[segmentShift == 32 ? 0 : h >>> segmentShift];
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return x <= 1 ? 1 : 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+    /**
+     * EntryVisitor visits a live mapping of the table
+     *
+     * @param <V> the type of value
+     */
+    @FunctionalInterface
+    interface EntryVisitor<V> {
+
+        /**
+         * Visits the mapping
+         *
+         * @param key   the key, or null if the table doesn't store keys
+         * @param ref   the reference
+         * @param value the value of reference, it is strongly reachable during the visit
+         */
+        void visit(Object key, Reference<V> ref, V value);
+    }
+
+    /**
+     * Reference holds the value softly and remembers the hash of its key, so it can be found for reclaiming
+     *
+     * @param <V> the type of value
+     */
+    abstract static class Reference<V> extends SoftReference<V> {
+
+        Reference(V value, ReferenceQueue<? super V> q) {
+            super(value, q);
+        }
+
+        /**
+         * Returns the hash of key, it never changes
+         *
+         * @return the hash
+         */
+        abstract long hash();
+    }
+
+    /**
+     * Segment is an open-addressing table with linear probing, the writers hold the write lock of StampedLock.
+     *
+     * @param <V> the type of value
+     */
+    private static class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private final boolean storesKeys;
+        private volatile Table<V> table;
+        private volatile int size;
+
+        Segment(int capacity, boolean storesKeys) {
+            this.storesKeys = storesKeys;
+            this.table = new Table<>(ceilingPowerOfTwo((int) Math.min((long) (capacity / LOAD_FACTOR) + 1, 1 << 30)),
+                    storesKeys);
+        }
+
+        Reference<V> get(Object key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            Table<V> current = table;
+            int i = indexOf(current, key, hash);
+            Reference<V> ref = i >= 0 ? current.values[i] : null;
+            if (lock.validate(stamp)) {
+                return ref;
+            }
+            stamp = lock.readLock();
+            try {
+                current = table;
+                i = indexOf(current, key, hash);
+                return i >= 0 ? current.values[i] : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void put(Object key, Reference<V> ref, boolean onlyIfAbsent) {
+            long stamp = lock.writeLock();
+            try {
+                Table<V> current = table;
+                int i = indexOf(current, key, ref.hash());
+                if (i >= 0) {
+                    if (!onlyIfAbsent || Objects.isNull(current.values[i].get())) {
+                        current.values[i] = ref;
+                    }
+                    return;
+                }
+                //the probing stops at an empty slot, which is where the key is inserted
+                i = -i - 1;
+                if (storesKeys) {
+                    current.keys[i] = key;
+                }
+                current.values[i] = ref;
+                if (++size > current.threshold) {
+                    resize(current);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Reference<V> remove(Object key, long hash) {
+            long stamp = lock.writeLock();
+            try {
+                Table<V> current = table;
+                int i = indexOf(current, key, hash);
+                if (i < 0) {
+                    return null;
+                }
+                Reference<V> existing = current.values[i];
+                shiftBackward(current, i);
+                size--;
+                return existing;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Removes the slot of the collected reference if it is still mapped, the reference is found by identity
+         * because it doesn't remember the key.
+         */
+        void remove(Reference<V> collected) {
+            long stamp = lock.writeLock();
+            try {
+                Table<V> current = table;
+                int mask = current.values.length - 1;
+                for (int i = (int) collected.hash() & mask; ; i = (i + 1) & mask) {
+                    Reference<V> existing = current.values[i];
+                    if (Objects.isNull(existing)) {
+                        return;
+                    }
+                    if (existing == collected) {
+                        shiftBackward(current, i);
+                        size--;
+                        return;
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                table = new Table<>(table.values.length, storesKeys);
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Deletes the slot without tombstones by moving the following entries of the cluster backward
+         */
+        private static <V> void shiftBackward(Table<V> table, int deleted) {
+            int mask = table.values.length - 1;
+            int hole = deleted;
+            for (int i = (hole + 1) & mask; Objects.nonNull(table.values[i]); i = (i + 1) & mask) {
+                int home = (int) table.values[i].hash() & mask;
+                //the entry can fill the hole if its home is not in (hole, i]
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    table.move(i, table, hole);
+                    hole = i;
+                }
+            }
+            table.values[hole] = null;
+            if (Objects.nonNull(table.keys)) {
+                table.keys[hole] = null;
+            }
+        }
+
+        private void resize(Table<V> current) {
+            Table<V> resized = new Table<>(current.values.length << 1, storesKeys);
+            int mask = resized.values.length - 1;
+            int live = 0;
+            for (int j = 0; j < current.values.length; j++) {
+                Reference<V> ref = current.values[j];
+                //the collected entries are dropped by the way
+                if (Objects.isNull(ref) || Objects.isNull(ref.get())) {
+                    continue;
+                }
+                int i = (int) ref.hash() & mask;
+                while (Objects.nonNull(resized.values[i])) {
+                    i = (i + 1) & mask;
+                }
+                current.move(j, resized, i);
+                live++;
+            }
+            size = live;
+            table = resized;
+        }
+
+        /**
+         * Probes the slot of the key
+         *
+         * @return the slot of the key, or (-(insertion slot) - 1) if the key is absent
+         */
+        private static <V> int indexOf(Table<V> table, Object key, long hash) {
+            Reference<V>[] values = table.values;
+            Object[] keys = table.keys;
+            int mask = values.length - 1;
+            //the probing is bounded because an optimistic reader may observe a table being modified
+            for (int i = (int) hash & mask, probes = 0; probes < values.length; i = (i + 1) & mask, probes++) {
+                Reference<V> ref = values[i];
+                if (Objects.isNull(ref)) {
+                    return -i - 1;
+                }
+                //the key may be null or mismatched with the reference if a writer interferes
+                if (ref.hash() == hash && (Objects.isNull(keys) || key.equals(keys[i]))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Table holds the parallel arrays of keys and values, so that a reader always sees the arrays of the same length.
+     * The keys are null if the table doesn't store keys.
+     *
+     * @param <V> the type of value
+     */
+    private static class Table<V> {
+        private final Object[] keys;
+        private final Reference<V>[] values;
+        private final int threshold;
+
+        @SuppressWarnings("unchecked")
+        Table(int capacity, boolean storesKeys) {
+            this.keys = storesKeys ? new Object[capacity] : null;
+            this.values = (Reference<V>[]) new Reference<?>[capacity];
+            this.threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        void move(int from, Table<V> to, int slot) {
+            if (Objects.nonNull(keys)) {
+                to.keys[slot] = keys[from];
+            }
+            to.values[slot] = values[from];
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanRegistrationException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StatsCounter records the statistics of SoftConcurrentHashMap by striped counters, so the concurrent recordings
+ * don't contend on the same cache line. The map holds no StatsCounter if it doesn't record stats.
+ * <p>
+ * It also serves as the MXBean, the bean only references the counters so it never pins the map. The bean is
+ * unregistered by the map explicitly, or by ReferenceReaper once the map is collected.
+ *
+ * @author xasync.com
+ */
+final class StatsCounter implements CacheStatsMXBean {
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder evictionWeight = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+    private final LongAdder collectedCount = new LongAdder();
+    private final LongAdder reclaimCount = new LongAdder();
+    private final LongAdder totalReclaimTime = new LongAdder();
+
+    /**
+     * The name of the MXBean, it is null if the counter isn't registered
+     */
+    private final AtomicReference<ObjectName> objectName = new AtomicReference<>();
+
+    /**
+     * Registers the counter as the MXBean of the map on the platform MBeanServer
+     *
+     * @param name the name of the map
+     */
+    void register(String name) {
+        try {
+            ObjectName registered = new ObjectName("com.xasync.island:type=SoftConcurrentHashMap,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+            objectName.set(registered);
+        } catch (JMException ex) {
+            throw new IllegalStateException("fails to register the stats MBean of " + name, ex);
+        }
+    }
+
+    /**
+     * Unregisters the MXBean if it is registered by this counter, the name can be registered again after it returns.
+     * It is idempotent, so it never unregisters a bean registered later under the same name.
+     */
+    void unregister() {
+        ObjectName registered = objectName.getAndSet(null);
+        if (Objects.isNull(registered)) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+        } catch (InstanceNotFoundException ex) {
+            //it has been unregistered through the MBeanServer directly
+        } catch (MBeanRegistrationException ex) {
+            throw new IllegalStateException("fails to unregister the stats MBean " + registered, ex);
+        }
+    }
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    void recordMiss() {
+        missCount.increment();
+    }
+
+    void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    void recordLoadFailure(long loadTime) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    void recordEviction(int weight) {
+        evictionCount.increment();
+        evictionWeight.add(weight);
+    }
+
+    void recordExpiration() {
+        expirationCount.increment();
+    }
+
+    void recordCollected(int count) {
+        collectedCount.add(count);
+    }
+
+    void recordReclaim(long reclaimTime) {
+        reclaimCount.increment();
+        totalReclaimTime.add(reclaimTime);
+    }
+
+    /**
+     * Returns the snapshot, the counters are read one by one so it is not an atomic view under concurrent recordings.
+     *
+     * @return CacheStats
+     */
+    CacheStats snapshot() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+                totalLoadTime.sum(), evictionCount.sum(), evictionWeight.sum(), expirationCount.sum(),
+                collectedCount.sum(), reclaimCount.sum(), totalReclaimTime.sum());
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        return snapshot().hitRate();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return loadSuccessCount.sum();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return loadFailureCount.sum();
+    }
+
+    @Override
+    public double getAverageLoadPenalty() {
+        return snapshot().averageLoadPenalty();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public long getEvictionWeight() {
+        return evictionWeight.sum();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    @Override
+    public long getCollectedCount() {
+        return collectedCount.sum();
+    }
+
+    @Override
+    public long getReclaimCount() {
+        return reclaimCount.sum();
+    }
+
+    @Override
+    public long getTotalReclaimTime() {
+        return totalReclaimTime.sum();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * StrongHotSet pins the values of the hottest nodes of SoftConcurrentHashMap with strong references, so GC can only
+ * clear the colder values and the hit ratio stays high after a collection.
+ * <p>
+ * It is a direct-mapped array of slots without any lock: each node competes for the slot selected by the hash of its
+ * key. A read node takes the slot by CAS if it has more hits than the incumbent, and pins its value, while the
+ * incumbent is unpinned and becomes softly reachable again.
+ * <p>
+ * The hits are aged like TinyLFU without touching all nodes: the epoch advances about once per ten times the size of
+ * map reads, decided by a thread-local random so the readers never contend on a counter, and the hits of a node are
+ * halved for each epoch since they were updated. So a node which is no longer read loses its slot eventually.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+final class StrongHotSet<K, V> {
+    private final AtomicReferenceArray<ManagedDataNode<K, V>> slots;
+    private final int mask;
+    private final LongSupplier population;
+    private final AtomicInteger epoch = new AtomicInteger();
+
+    /**
+     * The expected number of reads per epoch, it is recomputed when the epoch advances
+     */
+    private volatile int epochLength;
+
+    StrongHotSet(int capacity, LongSupplier population) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("the capacity of hot set must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.min(capacity, 1 << 30));
+        size = size < capacity ? size << 1 : size;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.population = population;
+        this.epochLength = size * 10;
+    }
+
+    /**
+     * Records a read of the node whose value is live
+     *
+     * @param node  the node
+     * @param value the value of node, it is strongly reachable by the caller
+     */
+    void recordAccess(ManagedDataNode<K, V> node, V value) {
+        if (ThreadLocalRandom.current().nextInt(epochLength) == 0) {
+            epoch.incrementAndGet();
+            epochLength = (int) Math.min(1 << 30, 10 * Math.max(slots.length(), population.getAsLong()));
+        }
+        int now = epoch.get();
+        node.recordHit(now);
+        int index = indexOf(node.getIndex());
+        ManagedDataNode<K, V> incumbent = slots.get(index);
+        if (incumbent == node) {
+            return;
+        }
+        if (Objects.nonNull(incumbent) && incumbent.hits(now) >= node.hits(now) && Objects.nonNull(incumbent.get())) {
+            return;
+        }
+        if (slots.compareAndSet(index, incumbent, node)) {
+            node.pin(value);
+            if (Objects.nonNull(incumbent)) {
+                incumbent.unpin();
+            }
+            //the node may be displaced before it was pinned, and the displacer couldn't unpin it
+            if (slots.get(index) != node) {
+                node.unpin();
+            }
+        }
+    }
+
+    /**
+     * Frees the slot of the node after it is removed from the map
+     *
+     * @param node the node
+     */
+    void remove(ManagedDataNode<K, V> node) {
+        int index = indexOf(node.getIndex());
+        if (slots.get(index) == node && slots.compareAndSet(index, node, null)) {
+            node.unpin();
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            ManagedDataNode<K, V> node = slots.getAndSet(i, null);
+            if (Objects.nonNull(node)) {
+                node.unpin();
+            }
+        }
+    }
+
+    private int indexOf(K key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * TimerWheel is a hierarchical timing wheel which schedules the deadlines of ManagedDataNode in O(1). Each level has
+ * 64 buckets, the bucket of level 0 spans about 16.7ms, and each upper level is 64 times as long as the lower one, so
+ * that 5 levels cover about 208 days. When the wheel advances, only the buckets whose time has passed are visited, the
+ * expired nodes are collected and the others are cascaded into the lower levels.
+ * <p>
+ * The wheel is guarded by its own lock and never calls back into the map while holding it.
+ *
+ * @author xasync.com
+ */
+final class TimerWheel<K, V> {
+    private final static int BUCKETS = 64;
+    private final static int BUCKET_MASK = BUCKETS - 1;
+    private final static int[] SHIFTS = {24, 30, 36, 42, 48};
+
+    /**
+     * The span of a bucket in level 0, in nanoseconds
+     */
+    final static long TICK_NANOS = 1L << SHIFTS[0];
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ManagedDataNode<K, V>[][] wheel;
+
+    /**
+     * Recalculates the deadline of node when its bucket expires, the deadline is extended by the access.
+     */
+    private final ToLongFunction<ManagedDataNode<K, V>> deadline;
+
+    /**
+     * The time of the last advance, in nanoseconds
+     */
+    private long nanos;
+
+    /**
+     * Constructor
+     *
+     * @param nanos    the current time in nanoseconds
+     * @param deadline the function calculates the deadline of node
+     */
+    @SuppressWarnings("unchecked")
+    TimerWheel(long nanos, ToLongFunction<ManagedDataNode<K, V>> deadline) {
+        this.nanos = nanos;
+        this.deadline = deadline;
+        this.wheel = (ManagedDataNode<K, V>[][]) new ManagedDataNode<?, ?>[SHIFTS.length][BUCKETS];
+        for (ManagedDataNode<K, V>[] buckets : wheel) {
+            for (int i = 0; i < BUCKETS; i++) {
+                ManagedDataNode<K, V> sentinel = new ManagedDataNode<>(null, null, null, 0);
+                sentinel.prevInTimer = sentinel;
+                sentinel.nextInTimer = sentinel;
+                buckets[i] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedules the node at its deadline, it is rescheduled if it has been scheduled.
+     *
+     * @param node the node
+     */
+    void schedule(ManagedDataNode<K, V> node) {
+        lock.lock();
+        try {
+            unlink(node);
+            link(node, deadline.applyAsLong(node));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the node from the wheel if it has been scheduled
+     *
+     * @param node the node
+     */
+    void deschedule(ManagedDataNode<K, V> node) {
+        lock.lock();
+        try {
+            unlink(node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Advances the wheel to the current time, the nodes which have not expired are rescheduled.
+     *
+     * @param currentNanos the current time in nanoseconds
+     * @return the expired nodes, they have been descheduled
+     */
+    List<ManagedDataNode<K, V>> advance(long currentNanos) {
+        List<ManagedDataNode<K, V>> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            long previousNanos = nanos;
+            nanos = currentNanos;
+            for (int level = 0; level < SHIFTS.length; level++) {
+                long previousTicks = previousNanos >>> SHIFTS[level];
+                long currentTicks = currentNanos >>> SHIFTS[level];
+                if (currentTicks - previousTicks <= 0) {
+                    break;
+                }
+                long ticks = Math.min(currentTicks - previousTicks, BUCKET_MASK);
+                for (long tick = previousTicks; tick <= previousTicks + ticks; tick++) {
+                    expireBucket(wheel[level][(int) (tick & BUCKET_MASK)], expired);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return expired;
+    }
+
+    /**
+     * Unlinks the nodes which don't satisfy the condition, it is used after the map is cleared.
+     *
+     * @param retained the condition of retaining
+     */
+    void retainIf(Predicate<ManagedDataNode<K, V>> retained) {
+        lock.lock();
+        try {
+            for (ManagedDataNode<K, V>[] buckets : wheel) {
+                for (ManagedDataNode<K, V> sentinel : buckets) {
+                    ManagedDataNode<K, V> node = sentinel.nextInTimer;
+                    while (node != sentinel) {
+                        ManagedDataNode<K, V> next = node.nextInTimer;
+                        if (!retained.test(node)) {
+                            unlink(node);
+                        }
+                        node = next;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void expireBucket(ManagedDataNode<K, V> sentinel, List<ManagedDataNode<K, V>> expired) {
+        ManagedDataNode<K, V> node = sentinel.nextInTimer;
+        sentinel.prevInTimer = sentinel;
+        sentinel.nextInTimer = sentinel;
+        while (node != sentinel) {
+            ManagedDataNode<K, V> next = node.nextInTimer;
+            node.prevInTimer = null;
+            node.nextInTimer = null;
+            long time = deadline.applyAsLong(node);
+            if (time - nanos <= 0) {
+                expired.add(node);
+            } else {
+                link(node, time);
+            }
+            node = next;
+        }
+    }
+
+    private void link(ManagedDataNode<K, V> node, long time) {
+        //the node which has expired is linked into the current bucket, it will be visited by the next advance
+        long duration = Math.max(time - nanos, 0);
+        long scheduled = nanos + duration;
+        int level = 0;
+        while (level < SHIFTS.length - 1 && duration >= (1L << SHIFTS[level + 1])) {
+            level++;
+        }
+        ManagedDataNode<K, V> sentinel = wheel[level][(int) ((scheduled >>> SHIFTS[level]) & BUCKET_MASK)];
+        node.nextInTimer = sentinel;
+        node.prevInTimer = sentinel.prevInTimer;
+        sentinel.prevInTimer.nextInTimer = node;
+        sentinel.prevInTimer = node;
+    }
+
+    private void unlink(ManagedDataNode<K, V> node) {
+        if (Objects.isNull(node.nextInTimer)) {
+            return;
+        }
+        node.prevInTimer.nextInTimer = node.nextInTimer;
+        node.nextInTimer.prevInTimer = node.prevInTimer;
+        node.prevInTimer = null;
+        node.nextInTimer = null;
+    }
+}
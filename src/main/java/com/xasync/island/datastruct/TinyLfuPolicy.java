@@ -0,0 +1,415 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.xasync.island.datastruct.ManagedDataNode.*;
+
+/**
+ * TinyLfuPolicy bounds a SoftConcurrentHashMap by the W-TinyLFU policy. The new entries are admitted into a small LRU
+ * window (1% of the maximum), the entries evicted from the window compete with the victim of the main segment by
+ * their frequencies, and the main segment is a segmented LRU which is divided into probation and protected(80%).
+ * The frequency sketch is sized by the maximum if it bounds the number of entries, and by the number of entries
+ * when the writes are replayed if it bounds the weight, because a weight, likes bytes, isn't a number of entries.
+ * <p>
+ * All of the deques are guarded by a lock, the reads are recorded into a lossy striped buffer and the writes into a
+ * write buffer, both are replayed in batches by the thread which wins the lock by tryLock, so that the readers never
+ * block and the writers only block when the write buffer is full.
+ *
+ * @author xasync.com
+ */
+final class TinyLfuPolicy<K, V> {
+    private final static int BUFFER_SIZE = 16;
+    private final static int BUFFER_MASK = BUFFER_SIZE - 1;
+    private final static int STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+    private final static int WRITE_BUFFER_SIZE = 128 * STRIPES;
+
+    private final SoftConcurrentHashMap<K, V> map;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+
+    private final long maximum;
+    private final boolean weighted;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private long totalWeight;
+    private long windowWeight;
+    private long protectedWeight;
+
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> protectedDeque = new AccessOrderDeque<>();
+
+    /**
+     * The lossy read buffers, each stripe owns BUFFER_SIZE slots of readBuffer
+     */
+    private final AtomicReferenceArray<ManagedDataNode<K, V>> readBuffer;
+    private final AtomicLong[] readTails;
+    private final AtomicLongArray readHeads;
+
+    /**
+     * The pending writes, which are replayed in order under the lock
+     */
+    private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+
+    /**
+     * Constructor
+     *
+     * @param map      the map bounded by the policy
+     * @param maximum  the maximum weight
+     * @param weighted whether the entries are weighed by a weigher, or else each of them weighs 1
+     */
+    TinyLfuPolicy(SoftConcurrentHashMap<K, V> map, long maximum, boolean weighted) {
+        this.map = map;
+        this.maximum = maximum;
+        this.weighted = weighted;
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(weighted ? 0 : maximum);
+        this.readBuffer = new AtomicReferenceArray<>(STRIPES * BUFFER_SIZE);
+        this.readTails = new AtomicLong[STRIPES];
+        this.readHeads = new AtomicLongArray(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            readTails[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Records a read of the node, the read is dropped if the buffer is full and the lock is held by others.
+     *
+     * @param node the node which is read
+     */
+    void afterRead(ManagedDataNode<K, V> node) {
+        int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B9L) & (STRIPES - 1);
+        AtomicLong tail = readTails[stripe];
+        long t = tail.get();
+        boolean full = t - readHeads.get(stripe) >= BUFFER_SIZE;
+        if (!full && tail.compareAndSet(t, t + 1)) {
+            readBuffer.lazySet(stripe * BUFFER_SIZE + (int) (t & BUFFER_MASK), node);
+            full = (t + 1) - readHeads.get(stripe) >= BUFFER_SIZE;
+        }
+        if (full && evictionLock.tryLock()) {
+            try {
+                maintain();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Records the write of the node, which links the new node and evicts the entries while the total weight exceeds
+     * the maximum once it is replayed.
+     *
+     * @param node the node which is put
+     * @param old  the node which is replaced by the new node, nullable
+     */
+    void afterWrite(ManagedDataNode<K, V> node, SoftConcurrentHashMap.SoftDataNode<K, V> old) {
+        writeBuffer.offer(() -> onWrite(node, old));
+        scheduleDrain();
+    }
+
+    /**
+     * Records the removal of the node, which unlinks it once it is replayed
+     *
+     * @param node the node which is removed
+     */
+    void afterRemoval(SoftConcurrentHashMap.SoftDataNode<K, V> node) {
+        if (!(node instanceof ManagedDataNode)) {
+            return;
+        }
+        writeBuffer.offer(() -> unlink((ManagedDataNode<K, V>) node));
+        scheduleDrain();
+    }
+
+    /**
+     * Unlinks all nodes which are not mapped by the map anymore after the map is cleared.
+     */
+    void afterClear() {
+        evictionLock.lock();
+        try {
+            maintain();
+            unlinkStale(window);
+            unlinkStale(probation);
+            unlinkStale(protectedDeque);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the total weight of the nodes tracked by the policy
+     *
+     * @return the total weight
+     */
+    long weightedSize() {
+        evictionLock.lock();
+        try {
+            maintain();
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Replays the buffers by the thread which wins the lock, the writer blocks on the lock only if the write buffer is
+     * full. The buffers are checked again after unlocking, so that a write offered while the lock was released is
+     * never left behind. A write made while replaying, likes by a listener of eviction, is left to the outer replay.
+     */
+    private void scheduleDrain() {
+        boolean blocking = pendingWrites.incrementAndGet() >= WRITE_BUFFER_SIZE;
+        if (evictionLock.isHeldByCurrentThread()) {
+            return;
+        }
+        do {
+            if (blocking) {
+                evictionLock.lock();
+                blocking = false;
+            } else if (!evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                maintain();
+            } finally {
+                evictionLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    private void maintain() {
+        drainReadBuffers();
+        Runnable task;
+        boolean written = false;
+        while (Objects.nonNull(task = writeBuffer.poll())) {
+            pendingWrites.decrementAndGet();
+            task.run();
+            written = true;
+        }
+        if (written) {
+            if (weighted) {
+                sketch.ensureCapacity(map.mappingCount());
+            }
+            evictEntries();
+        }
+    }
+
+    private void onWrite(ManagedDataNode<K, V> node, SoftConcurrentHashMap.SoftDataNode<K, V> old) {
+        if (old instanceof ManagedDataNode) {
+            unlink((ManagedDataNode<K, V>) old);
+        }
+        //the node may be replaced or removed by other threads before it was linked
+        if (map.get(node.getIndex()) != node) {
+            return;
+        }
+        sketch.increment(node.getIndex());
+        node.queueType = QUEUE_WINDOW;
+        window.add(node);
+        windowWeight += node.weight;
+        totalWeight += node.weight;
+    }
+
+    private void unlinkStale(AccessOrderDeque<K, V> deque) {
+        ManagedDataNode<K, V> node = deque.first;
+        while (Objects.nonNull(node)) {
+            ManagedDataNode<K, V> next = node.next;
+            if (map.get(node.getIndex()) != node) {
+                unlink(node);
+            }
+            node = next;
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            long head = readHeads.get(stripe);
+            long tail = readTails[stripe].get();
+            for (; head < tail; head++) {
+                int index = stripe * BUFFER_SIZE + (int) (head & BUFFER_MASK);
+                ManagedDataNode<K, V> node = readBuffer.get(index);
+                //the slot is claimed but not published yet
+                if (Objects.isNull(node)) {
+                    break;
+                }
+                readBuffer.lazySet(index, null);
+                onAccess(node);
+            }
+            readHeads.lazySet(stripe, head);
+        }
+    }
+
+    private void onAccess(ManagedDataNode<K, V> node) {
+        if (node.queueType == QUEUE_NONE) {
+            return;
+        }
+        sketch.increment(node.getIndex());
+        if (node.queueType == QUEUE_WINDOW) {
+            window.moveToBack(node);
+        } else if (node.queueType == QUEUE_PROBATION) {
+            probation.remove(node);
+            node.queueType = QUEUE_PROTECTED;
+            protectedDeque.add(node);
+            protectedWeight += node.weight;
+            demoteFromProtected();
+        } else {
+            protectedDeque.moveToBack(node);
+        }
+    }
+
+    private void demoteFromProtected() {
+        while (protectedWeight > protectedMaximum) {
+            ManagedDataNode<K, V> demoted = protectedDeque.poll();
+            if (Objects.isNull(demoted)) {
+                return;
+            }
+            protectedWeight -= demoted.weight;
+            demoted.queueType = QUEUE_PROBATION;
+            probation.add(demoted);
+        }
+    }
+
+    private void evictEntries() {
+        int candidates = 0;
+        while (windowWeight > windowMaximum) {
+            ManagedDataNode<K, V> node = window.poll();
+            if (Objects.isNull(node)) {
+                break;
+            }
+            windowWeight -= node.weight;
+            node.queueType = QUEUE_PROBATION;
+            probation.add(node);
+            candidates++;
+        }
+        while (totalWeight > maximum) {
+            ManagedDataNode<K, V> victim = firstOf(probation, protectedDeque, window);
+            ManagedDataNode<K, V> candidate = candidates > 0 ? probation.last : null;
+            if (Objects.isNull(victim)) {
+                return;
+            }
+            if (Objects.isNull(candidate) || candidate == victim) {
+                candidates = candidate == victim ? candidates - 1 : candidates;
+                evict(victim);
+            } else if (candidate.weight > maximum
+                    || sketch.frequency(candidate.getIndex()) <= sketch.frequency(victim.getIndex())) {
+                //the candidate is too heavy or colder than the victim, so that it can't be admitted
+                evict(candidate);
+                candidates--;
+            } else {
+                evict(victim);
+            }
+        }
+    }
+
+    private void evict(ManagedDataNode<K, V> node) {
+        unlink(node);
+        map.evictNode(node);
+    }
+
+    private void unlink(ManagedDataNode<K, V> node) {
+        switch (node.queueType) {
+            case QUEUE_WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case QUEUE_PROBATION:
+                probation.remove(node);
+                break;
+            case QUEUE_PROTECTED:
+                protectedDeque.remove(node);
+                protectedWeight -= node.weight;
+                break;
+            default:
+                return;
+        }
+        totalWeight -= node.weight;
+        node.queueType = QUEUE_NONE;
+    }
+
+    @SafeVarargs
+    private static <K, V> ManagedDataNode<K, V> firstOf(AccessOrderDeque<K, V>... deques) {
+        for (AccessOrderDeque<K, V> deque : deques) {
+            if (Objects.nonNull(deque.first)) {
+                return deque.first;
+            }
+        }
+        return null;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return x <= 1 ? 1 : 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+    /**
+     * AccessOrderDeque is an intrusive doubly-linked deque, the first node is the least recently used.
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    private static class AccessOrderDeque<K, V> {
+        private ManagedDataNode<K, V> first;
+        private ManagedDataNode<K, V> last;
+
+        void add(ManagedDataNode<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (Objects.isNull(last)) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        ManagedDataNode<K, V> poll() {
+            ManagedDataNode<K, V> node = first;
+            if (Objects.nonNull(node)) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void remove(ManagedDataNode<K, V> node) {
+            if (Objects.isNull(node.prev)) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (Objects.isNull(node.next)) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(ManagedDataNode<K, V> node) {
+            if (node != last) {
+                remove(node);
+                add(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+/**
+ * ValueCodec converts the values of SoftConcurrentHashMap to bytes and back, it is used by the off-heap tier. The
+ * decoded value should be equal to the encoded one, and the codec must be thread-safe.
+ *
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+public interface ValueCodec<V> {
+
+    /**
+     * Encodes the value to bytes
+     *
+     * @param value the value, it is never null
+     * @return the bytes
+     */
+    byte[] encode(V value);
+
+    /**
+     * Decodes the bytes produced by encode to a value
+     *
+     * @param bytes the bytes
+     * @return the value, it can't be null
+     */
+    V decode(byte[] bytes);
+}
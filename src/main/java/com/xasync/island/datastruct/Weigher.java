@@ -0,0 +1,37 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+/**
+ * Weigher calculates the relative weight of an entry, it is used by a bounded SoftConcurrentHashMap to decide
+ * whether the total weight exceeds the maximum.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author xasync.com
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * Returns the weight of an entry, it must be non-negative and is calculated only once when the entry is put.
+     *
+     * @param key   the key of entry
+     * @param value the value of entry
+     * @return the weight of entry
+     */
+    int weigh(K key, V value);
+}
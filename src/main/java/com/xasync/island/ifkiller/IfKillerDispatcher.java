@@ -0,0 +1,171 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.ifkiller;
+
+import com.xasync.island.ifkiller.annotation.IfKillerToken;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * IfKillerDispatcher is the invocation handler of the dispatcher created by {@code IfKillers.dispatcher}. It resolves
+ * the position of the token and a spread MethodHandle for each method of the abstraction once, so that an invocation
+ * only extracts the token, meets the implementation instance and invokes the handle on it.
+ *
+ * @author xasync.com
+ */
+final class IfKillerDispatcher<T> implements InvocationHandler {
+    /**
+     * The position of the token if the method has no parameter annotated by '@IfKillerToken'
+     */
+    private final static int NO_TOKEN = -1;
+    private final static Object[] NO_ARGS = new Object[0];
+
+    private final IfKillerProxy<T> proxy;
+    private final Class<T> definition;
+
+    /**
+     * The routes of the methods in your abstraction, Structure:(method,route)
+     */
+    private final Map<Method, Route> routes;
+
+    private IfKillerDispatcher(IfKillerProxy<T> proxy, Class<T> definition) {
+        this.proxy = proxy;
+        this.definition = definition;
+        Map<Method, Route> table = new HashMap<>();
+        for (Method method : definition.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                table.put(method, new Route(tokenIndexOf(method), spread(method)));
+            }
+        }
+        this.routes = Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Create a dispatcher which implements your abstraction and routes each invocation by its token
+     *
+     * @param proxy      the proxy managing the implementation instances
+     * @param definition the metaClass of your abstraction, it must be an interface
+     * @param <T>        type
+     * @return the dispatcher
+     */
+    static <T> T create(IfKillerProxy<T> proxy, Class<T> definition) {
+        if (!definition.isInterface()) {
+            throw new IllegalArgumentException("the dispatcher requires an interface: " + definition.getName());
+        }
+        IfKillerDispatcher<T> handler = new IfKillerDispatcher<>(proxy, definition);
+        return definition.cast(Proxy.newProxyInstance(definition.getClassLoader(), new Class<?>[]{definition},
+                handler));
+    }
+
+    @Override
+    public Object invoke(Object dispatcher, Method method, Object[] args) throws Throwable {
+        Route route = routes.get(method);
+        if (Objects.isNull(route)) {
+            return invokeObjectMethod(dispatcher, method, args);
+        }
+        T instance = route.tokenIndex == NO_TOKEN ? proxy.meet(null) : meet(args[route.tokenIndex]);
+        Object[] arguments = Objects.nonNull(args) ? args : NO_ARGS;
+        return route.handle.invokeExact((Object) instance, arguments);
+    }
+
+    /**
+     * Meet the instance by the type of the token, the String, enum and int are checked when it is created
+     */
+    private T meet(Object token) {
+        if (token instanceof String) {
+            return proxy.meet((String) token);
+        } else if (token instanceof Enum) {
+            return proxy.meetEnum((Enum<?>) token);
+        } else if (token instanceof Integer) {
+            return proxy.meetInt((Integer) token);
+        }
+        return proxy.meet(null);
+    }
+
+    /**
+     * The methods declared by Object are handled by the dispatcher itself
+     */
+    private Object invokeObjectMethod(Object dispatcher, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return dispatcher == args[0];
+            case "hashCode":
+                return System.identityHashCode(dispatcher);
+            case "toString":
+                return "IfKillerDispatcher(" + definition.getCanonicalName() + ")";
+            default:
+                throw new UnsupportedOperationException(method.toString());
+        }
+    }
+
+    private static int tokenIndexOf(Method method) {
+        int tokenIndex = NO_TOKEN;
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (!(annotation instanceof IfKillerToken)) {
+                    continue;
+                }
+                if (tokenIndex != NO_TOKEN) {
+                    throw new IllegalArgumentException("there are more than one '@IfKillerToken' in " + method);
+                }
+                Class<?> tokenType = method.getParameterTypes()[i];
+                if (tokenType != String.class && !tokenType.isEnum() && tokenType != int.class
+                        && tokenType != Integer.class) {
+                    throw new IllegalArgumentException("the '@IfKillerToken' must annotate a String, an enum or an "
+                            + "int in " + method);
+                }
+                tokenIndex = i;
+            }
+        }
+        return tokenIndex;
+    }
+
+    /**
+     * Adapt the method to (Object instance, Object[] args)Object, so that it can be invoked exactly
+     */
+    private static MethodHandle spread(Method method) {
+        try {
+            int arity = method.getParameterCount();
+            return MethodHandles.publicLookup().unreflect(method)
+                    .asType(MethodType.genericMethodType(arity + 1))
+                    .asSpreader(Object[].class, arity);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("the dispatcher can't access " + method, e);
+        }
+    }
+
+    private final static class Route {
+        private final int tokenIndex;
+        private final MethodHandle handle;
+
+        private Route(int tokenIndex, MethodHandle handle) {
+            this.tokenIndex = tokenIndex;
+            this.handle = handle;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.ifkiller;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * IfKillerIndex is an immutable table of the implementation instances of an abstraction, which is built by
+ * IfKillerIndexer once the application context is refreshed.
+ *
+ * @author xasync.com
+ */
+final class IfKillerIndex<T> {
+    private final static IfKillerIndex<?> EMPTY = new IfKillerIndex<>(Collections.emptyMap(), null);
+
+    /**
+     * Structure:(token,instance)
+     */
+    private final Map<String, T> instances;
+
+    /**
+     * The default implementation, null if it is not declared
+     */
+    private final T defaultInstance;
+
+    IfKillerIndex(Map<String, T> instances, T defaultInstance) {
+        this.instances = instances;
+        this.defaultInstance = defaultInstance;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> IfKillerIndex<T> empty() {
+        return (IfKillerIndex<T>) EMPTY;
+    }
+
+    T get(String token) {
+        return instances.get(token);
+    }
+
+    Map<String, T> instances() {
+        return instances;
+    }
+
+    T getDefault() {
+        return defaultInstance;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.ifkiller;
+
+import com.xasync.island.ifkiller.annotation.IfKiller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.util.ClassUtils;
+
+import java.util.*;
+
+/**
+ * IfKillerIndexer enables the eager mode of IfKillers. Once the application context is refreshed, it scans all the
+ * beans declared by '@IfKiller' in one pass and builds an immutable (token,instance) table for each abstraction they
+ * implement, so that {@code IfKillerProxy.meet} becomes a single hash lookup without calling into spring. You only
+ * need to register it as a bean:
+ * <pre>
+ *     &#64;Bean
+ *     public IfKillerIndexer ifKillerIndexer() {
+ *         return new IfKillerIndexer();
+ *     }
+ * </pre>
+ * In the eager mode, a token which is not declared by any bean at the refresh meets the default implementation at
+ * once, even if the bean is registered into the context later. Only the refresh of the context which the indexer is
+ * registered into rebuilds the indexes, the refreshes of its child contexts are ignored. Once that context is closed,
+ * the proxies return to the lazy mode.
+ *
+ * @author xasync.com
+ */
+public class IfKillerIndexer implements ApplicationListener<ContextRefreshedEvent>, ApplicationContextAware,
+        DisposableBean {
+    private final static Logger LOG = LoggerFactory.getLogger(IfKillerIndexer.class);
+
+    /**
+     * The application context which the indexer is registered into
+     */
+    private ApplicationContext applicationContext;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        // the events of the child contexts are published to the parent too, but they don't see its beans
+        if (event.getApplicationContext() != applicationContext) {
+            return;
+        }
+        Map<Class<?>, IfKillerIndex<?>> indexes = index(applicationContext);
+        IfKillers.install(indexes);
+        LOG.info("Success to index {} abstractions declared by '@IfKiller'", indexes.size());
+    }
+
+    @Override
+    public void destroy() {
+        IfKillers.install(null);
+        LOG.info("The indexes declared by '@IfKiller' are removed because of closing the context");
+    }
+
+    /**
+     * Build the token tables of all abstractions implemented by the beans declared by '@IfKiller'
+     *
+     * @param applicationContext the application context of spring
+     * @return the index of each abstraction, Structure:(metaClass,IfKillerIndex)
+     */
+    static Map<Class<?>, IfKillerIndex<?>> index(ApplicationContext applicationContext) {
+        Map<Class<?>, Map<String, Object>> tables = new HashMap<>();
+        Map<Class<?>, Object> defaults = new HashMap<>();
+        for (Object instance : applicationContext.getBeansWithAnnotation(IfKiller.class).values()) {
+            Class<?> instClazz = AopUtils.getTargetClass(instance);
+            IfKiller spec = instClazz.getAnnotation(IfKiller.class);
+            if (Objects.isNull(spec)) {
+                LOG.warn("'{}' miss the '@IfKiller' annotation", instClazz.getCanonicalName());
+                continue;
+            }
+            for (Class<?> ability : abstractionsOf(instClazz)) {
+                Map<String, Object> table = tables.computeIfAbsent(ability, k -> new HashMap<>());
+                for (String token : spec.meets()) {
+                    String registerKey = Objects.nonNull(token) ? token.trim() : "";
+                    if (registerKey.isEmpty()) {
+                        continue;
+                    }
+                    Object existing = table.putIfAbsent(registerKey, instance);
+                    if (Objects.nonNull(existing) && existing != instance) {
+                        LOG.warn("'{}' and '{}' both meet '{}' of '{}', the former is used",
+                                existing.getClass().getCanonicalName(), instClazz.getCanonicalName(),
+                                registerKey, ability.getCanonicalName());
+                    }
+                }
+                if (spec.isDefault()) {
+                    defaults.putIfAbsent(ability, instance);
+                }
+            }
+        }
+        Map<Class<?>, IfKillerIndex<?>> indexes = new HashMap<>();
+        tables.forEach((ability, table) -> indexes.put(ability,
+                new IfKillerIndex<>(Collections.unmodifiableMap(table), defaults.get(ability))));
+        return Collections.unmodifiableMap(indexes);
+    }
+
+    /**
+     * The abstractions which the implementation class can be met by, likes its interfaces and super classes
+     */
+    private static Set<Class<?>> abstractionsOf(Class<?> instClazz) {
+        Set<Class<?>> abstractions = new LinkedHashSet<>(ClassUtils.getAllInterfacesForClassAsSet(instClazz));
+        for (Class<?> clazz = instClazz; Objects.nonNull(clazz) && clazz != Object.class;
+             clazz = clazz.getSuperclass()) {
+            abstractions.add(clazz);
+        }
+        return abstractions;
+    }
+}
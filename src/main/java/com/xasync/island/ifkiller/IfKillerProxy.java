@@ -22,10 +22,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * IfKillerProxy is used to manage the implementation instance of your abstraction. It can find specific instance
@@ -36,28 +37,71 @@ import java.util.concurrent.ConcurrentHashMap;
 public class IfKillerProxy<T> {
     private final static Logger LOG = LoggerFactory.getLogger(IfKillerProxy.class);
 
+    /**
+     * The maximum number of the unknown tokens cached by each proxy
+     */
+    final static int MAX_UNKNOWN_TOKENS = 1024;
+
+    /**
+     * The resolution of an unknown token when there is no default implementation
+     */
+    private final static Object NO_DEFAULT = new Object();
+
+    /**
+     * The maximum length of the dense table of int tokens, the wider tokens are met as strings
+     */
+    private final static int MAX_INT_TABLE_LENGTH = 4096;
+
     /**
      * The instance registration pool, Structure:(token,instance)
      */
     private final Map<String, T> INSTANCE_POOL = new ConcurrentHashMap<>();
 
+    /**
+     * The negative lookups, Structure:(token,default instance or NO_DEFAULT). It is emptied once it is full so that
+     * the junk tokens of high cardinality can't grow memory without limit, and cleared when the context is refreshed.
+     */
+    private final Map<String, Object> UNKNOWN_TOKENS = new ConcurrentHashMap<>();
+
+    /**
+     * The routing tables of enum tokens, Structure:(enum class, default instance or NO_DEFAULT indexed by ordinal)
+     */
+    private final Map<Class<?>, Object[]> ENUM_TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * The dense routing table of int tokens, null until an int token is met
+     */
+    private volatile IntTable intTable;
+
     /**
      * The meatClass about your abstraction
      */
     private final Class<T> definition;
 
+    /**
+     * The lookup of the application context to scan, it is SpringContexts by default
+     */
+    private final Supplier<ApplicationContext> contextLookup;
+
     /**
      * The default implement for your abstraction, it will be return when it can't be found
      */
     private T defaultImplementInstance;
 
+    /**
+     * The eager index built at the refresh of context, null if IfKillerIndexer is not registered
+     */
+    private volatile IfKillerIndex<T> index;
+
     /**
      * Private constructor, you can use {@code create } to instead of it
      *
-     * @param clazz the metaClass
+     * @param clazz         the metaClass
+     * @param contextLookup the lookup of the application context
      */
-    private IfKillerProxy(Class<T> clazz) {
+    private IfKillerProxy(Class<T> clazz, Supplier<ApplicationContext> contextLookup) {
         this.definition = clazz;
+        this.contextLookup = contextLookup;
     }
 
     /**
@@ -68,7 +112,19 @@ public class IfKillerProxy<T> {
      * @return IfKillerProxy
      */
     public static <T> IfKillerProxy<T> create(Class<T> clazz) {
-        return new IfKillerProxy<>(clazz);
+        return create(clazz, SpringContexts::getApplicationContext);
+    }
+
+    /**
+     * Create a proxy which scans the application context returned by the lookup
+     *
+     * @param clazz         the metaClass
+     * @param contextLookup the lookup of the application context
+     * @param <T>           type
+     * @return IfKillerProxy
+     */
+    static <T> IfKillerProxy<T> create(Class<T> clazz, Supplier<ApplicationContext> contextLookup) {
+        return new IfKillerProxy<>(clazz, contextLookup);
     }
 
     /**
@@ -79,30 +135,145 @@ public class IfKillerProxy<T> {
      */
     public T meet(String token) {
         String registerKey = Objects.nonNull(token) ? token.trim() : "";
+        IfKillerIndex<T> eager = index;
+        if (Objects.nonNull(eager)) {
+            return meetInIndex(eager, registerKey);
+        }
         if (registerKey.isEmpty()) {
-            return Optional.ofNullable(defaultImplementInstance)
-                    .orElseThrow(() -> new RuntimeException("The token you input is blank"));
+            return resolve(registerKey, defaultResolution());
         }
         // Get priority from registration pool
         T instance = INSTANCE_POOL.get(registerKey);
         if (Objects.nonNull(instance)) {
             return instance;
         }
+        // Resolve the token which is known to be absent without scanning again
+        Object resolution = UNKNOWN_TOKENS.get(registerKey);
+        if (Objects.nonNull(resolution)) {
+            return resolve(registerKey, resolution);
+        }
         // Find the instance in spring context because of not exists.
         instance = findInstanceInApplicationContext(registerKey);
         if (Objects.nonNull(instance)) {
             //success: register it into pool and return
             INSTANCE_POOL.putIfAbsent(registerKey, instance);
             return instance;
-        } else if (Objects.nonNull(defaultImplementInstance)) {
+        }
+        //miss: remember the default instance or its absence for the token
+        resolution = defaultResolution();
+        if (UNKNOWN_TOKENS.size() >= MAX_UNKNOWN_TOKENS) {
+            UNKNOWN_TOKENS.clear();
+        }
+        UNKNOWN_TOKENS.put(registerKey, resolution);
+        return resolve(registerKey, resolution);
+    }
+
+    /**
+     * Find the implementation instance according to the enum constant you input, it meets the token declared as the
+     * name of the constant(ignoring case), likes 'CAT' meets '@IfKiller(meets={"cat"})'. The tokens of an enum class
+     * are resolved once, so that it is an array load by the ordinal later.
+     * <p>
+     * If a constant has no exact token but several tokens which differ only in case, likes 'Cat' and 'cat' declared
+     * by different implementations, the meeting is rejected as it is ambiguous.
+     *
+     * @param token an enum constant whose name is declared by '@IfKiller'
+     * @return a implementation instance
+     * @throws IllegalStateException if the tokens ignoring case for the constant are ambiguous
+     */
+    public T meetEnum(Enum<?> token) {
+        if (Objects.isNull(token)) {
+            return meet(null);
+        }
+        Class<?> enumClass = token.getDeclaringClass();
+        Object[] table = ENUM_TABLES.get(enumClass);
+        if (Objects.isNull(table)) {
+            table = ENUM_TABLES.computeIfAbsent(enumClass, this::buildEnumTable);
+        }
+        return resolve(token.name(), table[token.ordinal()]);
+    }
+
+    /**
+     * Find the implementation instance according to the int you input, it meets the token declared as the decimal
+     * of it. The int tokens are resolved once into a dense table, so that it is an array load later. If the declared
+     * int tokens spread wider than 4096, it falls back to meet the token as a string.
+     *
+     * @param token an int whose decimal is declared by '@IfKiller'
+     * @return a implementation instance
+     */
+    @SuppressWarnings("unchecked")
+    public T meetInt(int token) {
+        IntTable table = intTable;
+        if (Objects.isNull(table)) {
+            table = buildIntTable();
+            intTable = table;
+        }
+        if (Objects.isNull(table.resolutions)) {
+            return meet(Integer.toString(token));
+        }
+        int slot = token - table.base;
+        Object resolution = slot >= 0 && slot < table.resolutions.length ? table.resolutions[slot] : table.fallback;
+        // avoid boxing the token unless it has to be reported
+        return resolution != NO_DEFAULT ? (T) resolution : resolve(Integer.toString(token), resolution);
+    }
+
+    /**
+     * Forget the unknown tokens and the default instance, they may be declared by the beans of the refreshed context
+     */
+    void invalidateUnknownTokens() {
+        UNKNOWN_TOKENS.clear();
+        defaultImplementInstance = null;
+        ENUM_TABLES.clear();
+        intTable = null;
+    }
+
+    /**
+     * The number of tokens which are known to be absent
+     *
+     * @return the number of unknown tokens
+     */
+    int unknownTokens() {
+        return UNKNOWN_TOKENS.size();
+    }
+
+    /**
+     * Return the instance resolved for a token, or throw if it is blank or unknown and there is no default
+     * implementation
+     */
+    @SuppressWarnings("unchecked")
+    private T resolve(String registerKey, Object resolution) {
+        if (resolution != NO_DEFAULT) {
             //default: return the default instance when it is not null
-            return defaultImplementInstance;
-        } else {
-            //fail and no default: throw exception
-            String msg = "there is no implementation instance about '" + registerKey
-                    + "' and you use '@IfKiller(meets={\"" + registerKey + "\"})' to declare it";
-            throw new RuntimeException(msg);
+            return (T) resolution;
+        }
+        //fail and no default: throw exception
+        if (registerKey.isEmpty()) {
+            throw new RuntimeException("The token you input is blank");
         }
+        String msg = "there is no implementation instance about '" + registerKey
+                + "' and you use '@IfKiller(meets={\"" + registerKey + "\"})' to declare it";
+        throw new RuntimeException(msg);
+    }
+
+    /**
+     * Install the eager index, after that the proxy never calls into spring
+     *
+     * @param index the index of the current metaClass, null to return to the lazy mode
+     */
+    void install(IfKillerIndex<T> index) {
+        this.index = index;
+        invalidateUnknownTokens();
+    }
+
+    /**
+     * Find the implementation instance in the eager index, it falls back to the default one likes the lazy way
+     */
+    private T meetInIndex(IfKillerIndex<T> eager, String registerKey) {
+        T instance = registerKey.isEmpty() ? null : eager.get(registerKey);
+        if (Objects.nonNull(instance)) {
+            return instance;
+        }
+        T defaultInstance = eager.getDefault();
+        return resolve(registerKey, Objects.nonNull(defaultInstance) ? defaultInstance : NO_DEFAULT);
     }
 
     /**
@@ -115,6 +286,15 @@ public class IfKillerProxy<T> {
         return Objects.nonNull(clazz) && Objects.equals(clazz, definition);
     }
 
+    /**
+     * Get the metaClass about your abstraction
+     *
+     * @return the metaClass
+     */
+    Class<T> definition() {
+        return definition;
+    }
+
     /**
      * Find the instance of the current metaClass according to the token
      *
@@ -125,13 +305,8 @@ public class IfKillerProxy<T> {
         if (Objects.isNull(token)) {
             return null;
         }
-        ApplicationContext applicationContext = SpringContexts.getApplicationContext();
-        if (Objects.isNull(applicationContext)) {
-            throw new RuntimeException("IfKillers depends on SpringContexts, so that you must invokes " +
-                    "'SpringContexts.init' for finishing to initialize it before use.");
-        }
         // get instances by the metaClass of your abstraction
-        Map<String, T> instanceMap = applicationContext.getBeansOfType(definition);
+        Map<String, T> instanceMap = applicationContext().getBeansOfType(definition);
         for (T instance : instanceMap.values()) {
             Class<?> instClazz = instance.getClass();
             IfKiller spec = instClazz.getAnnotation(IfKiller.class);
@@ -143,7 +318,7 @@ public class IfKillerProxy<T> {
             boolean isFind = Arrays.stream(spec.meets())
                     .filter(Objects::nonNull)
                     .map(String::trim)
-                    .allMatch(token::equals);
+                    .anyMatch(token::equals);
             //return the current instance if finding
             if (isFind) {
                 return instance;
@@ -156,4 +331,130 @@ public class IfKillerProxy<T> {
         // return null if not find
         return null;
     }
+
+    /**
+     * Resolve each constant of the enum class by its name, exactly at first and then ignoring case. The tokens
+     * ignoring case must point to a single instance, otherwise the resolution would depend on the order of the map.
+     */
+    private Object[] buildEnumTable(Class<?> enumClass) {
+        Map<String, T> declarations = declarations();
+        Object fallback = defaultResolution();
+        Object[] constants = enumClass.getEnumConstants();
+        Object[] table = new Object[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            String name = ((Enum<?>) constants[i]).name();
+            Object resolution = declarations.get(name);
+            if (Objects.isNull(resolution)) {
+                resolution = resolveIgnoringCase(declarations, name);
+            }
+            table[i] = Objects.nonNull(resolution) ? resolution : fallback;
+        }
+        return table;
+    }
+
+    /**
+     * Resolve the name by the tokens which equal it ignoring case, it is null if there is none
+     */
+    private T resolveIgnoringCase(Map<String, T> declarations, String name) {
+        T resolution = null;
+        String matched = null;
+        for (Map.Entry<String, T> declaration : declarations.entrySet()) {
+            if (!declaration.getKey().equalsIgnoreCase(name)) {
+                continue;
+            }
+            if (Objects.nonNull(resolution) && resolution != declaration.getValue()) {
+                String msg = "the tokens '" + matched + "' and '" + declaration.getKey() + "' of "
+                        + definition.getCanonicalName() + " are ambiguous for the enum constant '" + name + "'";
+                throw new IllegalStateException(msg);
+            }
+            resolution = declaration.getValue();
+            matched = declaration.getKey();
+        }
+        return resolution;
+    }
+
+    /**
+     * Resolve the declared tokens which are decimal ints into a table from the minimum to the maximum
+     */
+    private IntTable buildIntTable() {
+        Map<String, T> declarations = declarations();
+        Object fallback = defaultResolution();
+        Map<Integer, T> intDeclarations = new HashMap<>();
+        for (Map.Entry<String, T> declaration : declarations.entrySet()) {
+            try {
+                intDeclarations.putIfAbsent(Integer.parseInt(declaration.getKey()), declaration.getValue());
+            } catch (NumberFormatException e) {
+                // not an int token
+            }
+        }
+        int min = intDeclarations.keySet().stream().min(Integer::compare).orElse(0);
+        int max = intDeclarations.keySet().stream().max(Integer::compare).orElse(-1);
+        if ((long) max - min >= MAX_INT_TABLE_LENGTH) {
+            return new IntTable(0, null, fallback);
+        }
+        Object[] resolutions = new Object[max - min + 1];
+        Arrays.fill(resolutions, fallback);
+        intDeclarations.forEach((token, instance) -> resolutions[token - min] = instance);
+        return new IntTable(min, resolutions, fallback);
+    }
+
+    /**
+     * All the tokens declared by the implementation instances, Structure:(token,instance)
+     */
+    private Map<String, T> declarations() {
+        IfKillerIndex<T> eager = index;
+        if (Objects.nonNull(eager)) {
+            return eager.instances();
+        }
+        Map<String, T> declarations = new HashMap<>();
+        for (T instance : applicationContext().getBeansOfType(definition).values()) {
+            IfKiller spec = instance.getClass().getAnnotation(IfKiller.class);
+            if (Objects.isNull(spec)) {
+                continue;
+            }
+            Arrays.stream(spec.meets())
+                    .filter(Objects::nonNull)
+                    .map(String::trim)
+                    .filter(token -> !token.isEmpty())
+                    .forEach(token -> declarations.putIfAbsent(token, instance));
+            if (Objects.isNull(defaultImplementInstance) && spec.isDefault()) {
+                defaultImplementInstance = instance;
+            }
+        }
+        return declarations;
+    }
+
+    /**
+     * The resolution of an unknown token, which is the default instance or NO_DEFAULT
+     */
+    private Object defaultResolution() {
+        IfKillerIndex<T> eager = index;
+        T instance = Objects.nonNull(eager) ? eager.getDefault() : defaultImplementInstance;
+        return Objects.nonNull(instance) ? instance : NO_DEFAULT;
+    }
+
+    private ApplicationContext applicationContext() {
+        ApplicationContext applicationContext = contextLookup.get();
+        if (Objects.isNull(applicationContext)) {
+            throw new RuntimeException("IfKillers depends on SpringContexts, so that you must invokes " +
+                    "'SpringContexts.init' for finishing to initialize it before use.");
+        }
+        IfKillers.listenRefresh(applicationContext);
+        return applicationContext;
+    }
+
+    /**
+     * IntTable holds the resolutions of the int tokens from the base, the resolutions are null if they spread widely
+     */
+    private final static class IntTable {
+        private final int base;
+        private final Object[] resolutions;
+        private final Object fallback;
+
+        private IntTable(int base, Object[] resolutions, Object fallback) {
+            this.base = base;
+            this.resolutions = resolutions;
+            this.fallback = fallback;
+        }
+    }
 }
@@ -15,9 +15,14 @@ limitations under the License.
 */
 package com.xasync.island.ifkiller;
 
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * IfKillers
@@ -63,6 +68,21 @@ public final class IfKillers {
      */
     private final static Map<String, IfKillerProxy<?>> POOL = new ConcurrentHashMap<>();
 
+    /**
+     * The dispatchers of your abstractions, Structure:(metaClass, dispatcher)
+     */
+    private final static Map<Class<?>, Object> DISPATCHERS = new ConcurrentHashMap<>();
+
+    /**
+     * The eager indexes built by IfKillerIndexer, Structure:(metaClass, IfKillerIndex), null in the lazy mode
+     */
+    private static volatile Map<Class<?>, IfKillerIndex<?>> INDEXES = null;
+
+    /**
+     * The application context whose refresh invalidates the unknown tokens cached by the proxies
+     */
+    private final static AtomicReference<ApplicationContext> LISTENED_CONTEXT = new AtomicReference<>();
+
     /**
      * The Main facade
      *
@@ -82,6 +102,76 @@ public final class IfKillers {
         // create a new IfKillerProxy and return if not exists.
         IfKillerProxy<T> newProxy = IfKillerProxy.create(clazz);
         POOL.putIfAbsent(registerKey, newProxy);
+        // read the indexes after registering, so that a concurrent install never misses the new proxy
+        installIfIndexed(newProxy, clazz);
         return newProxy;
     }
+
+    /**
+     * Get a dispatcher which implements your abstraction directly, each invocation meets the implementation instance
+     * by the parameter annotated by '@IfKillerToken' and calls it, likes:
+     * <pre>
+     *     IfKillers.dispatcher(Bark.class).start("cat", 3);
+     *     // equals to
+     *     IfKillers.about(Bark.class).meet("cat").start("cat", 3);
+     * </pre>
+     * The methods without the token parameter meet the default implementation.
+     *
+     * @param clazz The metaClass of your abstract, it must be a public interface
+     * @param <T>   type
+     * @return the dispatcher
+     */
+    public static <T> T dispatcher(Class<T> clazz) {
+        Objects.requireNonNull(clazz, "The metaClass is null");
+        Object dispatcher = DISPATCHERS.get(clazz);
+        if (Objects.isNull(dispatcher)) {
+            dispatcher = DISPATCHERS.computeIfAbsent(clazz, k -> IfKillerDispatcher.create(about(clazz), clazz));
+        }
+        return clazz.cast(dispatcher);
+    }
+
+    /**
+     * Install the eager indexes into all proxies, the abstractions without any instance get an empty index.
+     *
+     * @param indexes the index of each abstraction, Structure:(metaClass, IfKillerIndex), null to return all
+     *                proxies to the lazy mode
+     */
+    static void install(Map<Class<?>, IfKillerIndex<?>> indexes) {
+        INDEXES = indexes;
+        for (IfKillerProxy<?> proxy : POOL.values()) {
+            if (Objects.nonNull(indexes)) {
+                installIfIndexed(proxy, proxy.definition());
+            } else {
+                proxy.install(null);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void installIfIndexed(IfKillerProxy<T> proxy, Class<?> clazz) {
+        Map<Class<?>, IfKillerIndex<?>> indexes = INDEXES;
+        if (Objects.nonNull(indexes)) {
+            IfKillerIndex<?> index = indexes.get(clazz);
+            proxy.install(Objects.nonNull(index) ? (IfKillerIndex<T>) index : IfKillerIndex.empty());
+        }
+    }
+
+    /**
+     * Listen the refresh of the application context once, which invalidates the unknown tokens of all proxies
+     *
+     * @param applicationContext the application context of spring
+     */
+    static void listenRefresh(ApplicationContext applicationContext) {
+        ApplicationContext listened = LISTENED_CONTEXT.get();
+        if (listened == applicationContext || !(applicationContext instanceof ConfigurableApplicationContext)
+                || !LISTENED_CONTEXT.compareAndSet(listened, applicationContext)) {
+            return;
+        }
+        ((ConfigurableApplicationContext) applicationContext).addApplicationListener(event -> {
+            if (event instanceof ContextRefreshedEvent
+                    && ((ContextRefreshedEvent) event).getApplicationContext() == applicationContext) {
+                POOL.values().forEach(IfKillerProxy::invalidateUnknownTokens);
+            }
+        });
+    }
 }
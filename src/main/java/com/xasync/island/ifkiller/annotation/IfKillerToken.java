@@ -0,0 +1,39 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.ifkiller.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * IfKillerToken marks the parameter which carries the token of a method in your abstraction, so that the dispatcher
+ * created by {@code IfKillers.dispatcher} can route the invocation to the implementation instance meeting it. The
+ * parameter can be a String, an enum or an int, which is met by {@code IfKillerProxy.meet}, {@code meetEnum} or
+ * {@code meetInt}:
+ * <pre>
+ *     public interface Bark{
+ *         String start(&#64;IfKillerToken String animal, int times);
+ *     }
+ *
+ *     IfKillers.dispatcher(Bark.class).start("cat", 3);
+ * </pre>
+ *
+ * @author xasync.com
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface IfKillerToken {
+}
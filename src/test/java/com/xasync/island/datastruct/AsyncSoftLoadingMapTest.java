@@ -0,0 +1,111 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AsyncSoftLoadingMapTest
+ *
+ * @author xasync.com
+ */
+public class AsyncSoftLoadingMapTest {
+
+    @Test
+    public void testConcurrentCallersShareOneLoading() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        AsyncSoftLoadingMap<Integer, String> map = AsyncSoftLoadingMap.<Integer, String>builder()
+                .loader(k -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return "v" + k;
+                })
+                .build();
+        CompletableFuture<String> first = map.getAsync(1);
+        CompletableFuture<String> second = map.getAsync(1);
+        Assert.assertSame(first, second);
+        Assert.assertFalse(first.isDone());
+        release.countDown();
+        Assert.assertEquals("v1", first.join());
+        Assert.assertEquals("v1", map.getAsync(1).join());
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testFailedLoadingIsDropped() {
+        AtomicInteger loads = new AtomicInteger();
+        AsyncSoftLoadingMap<Integer, String> map = AsyncSoftLoadingMap.<Integer, String>builder()
+                .executor(Runnable::run)
+                .loader(k -> {
+                    if (loads.incrementAndGet() == 1) {
+                        throw new IllegalStateException("remote is down");
+                    }
+                    return "v" + k;
+                })
+                .build();
+        try {
+            map.getAsync(1).join();
+            Assert.fail("the first loading should fail");
+        } catch (CompletionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertNull(map.getIfPresent(1));
+        Assert.assertEquals("v1", map.getAsync(1).join());
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testGetAllAsyncBatchesMisses() {
+        CopyOnWriteArrayList<Set<Integer>> batches = new CopyOnWriteArrayList<>();
+        AsyncSoftLoadingMap<Integer, String> map = AsyncSoftLoadingMap.<Integer, String>builder()
+                .bulkLoader(keys -> {
+                    batches.add(keys);
+                    Map<Integer, String> values = new HashMap<>();
+                    keys.stream().filter(k -> k != 4).forEach(k -> values.put(k, "v" + k));
+                    return values;
+                })
+                .build();
+        map.put(1, "cached");
+        Map<Integer, String> values = map.getAllAsync(Arrays.asList(1, 2, 3, 2, 4)).join();
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals("cached", values.get(1));
+        Assert.assertEquals("v3", values.get(3));
+        Assert.assertFalse(values.containsKey(4));
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(3, batches.get(0).size());
+        Assert.assertEquals("v2", map.synchronous().getOnSoft(2));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
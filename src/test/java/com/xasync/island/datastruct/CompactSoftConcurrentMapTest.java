@@ -0,0 +1,112 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CompactSoftConcurrentMapTest
+ *
+ * @author xasync.com
+ */
+public class CompactSoftConcurrentMapTest {
+
+    @Test
+    public void testEqualButDistinctKeysShareTheMapping() {
+        CompactSoftConcurrentMap<String, String> map = new CompactSoftConcurrentMap<>();
+        map.putAsSoft(new String("key"), "v1");
+        Assert.assertEquals("v1", map.getOnSoft("key"));
+        Assert.assertTrue(map.containsKey(new String("key")));
+
+        map.putAsSoftIfAbsent(new String("key"), "other");
+        Assert.assertEquals("v1", map.getOnSoft("key"));
+        map.putAsSoft(new String("key"), "v2");
+        Assert.assertEquals("v2", map.getOnSoft(new String("key")));
+        Assert.assertEquals(1, map.size());
+
+        Assert.assertEquals("v2", map.remove(new String("key")));
+        Assert.assertNull(map.getOnSoft("key"));
+        Assert.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testReclaimRemovesTheCollectedReferenceByIdentity() throws InterruptedException {
+        //"Aa" and "BB" have the same hashCode, so they are probed in the same segment
+        CompactSoftConcurrentMap<String, String> map = new CompactSoftConcurrentMap<>();
+        map.putAsSoft("Aa", "v1");
+        map.putAsSoft("BB", "v2");
+        Assert.assertEquals("v1", map.getOnSoft("Aa"));
+        Assert.assertEquals("v2", map.getOnSoft("BB"));
+
+        //the replaced reference is collected later, it must not remove the new mapping of the same key
+        SoftProbingTable.Reference<String> replaced = referenceOf(map, "Aa");
+        map.putAsSoft("Aa", "v3");
+        replaced.enqueue();
+        map.table.reclaim(64);
+        Assert.assertEquals("v3", map.getOnSoft("Aa"));
+        Assert.assertEquals("v2", map.getOnSoft("BB"));
+        Assert.assertEquals(2, map.size());
+
+        //the reference may be polled by ReferenceReaper as well, so waits until one of them removes it
+        referenceOf(map, "BB").enqueue();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (map.size() != 1 && System.currentTimeMillis() < deadline) {
+            map.table.reclaim(64);
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, map.size());
+        Assert.assertNull(map.getOnSoft("BB"));
+        Assert.assertEquals("v3", map.getOnSoft("Aa"));
+    }
+
+    @Test
+    public void testFootprintIsSmallerThanSoftConcurrentHashMap() {
+        int count = 10_000;
+        Object[] payload = new Object[count * 2];
+        SoftConcurrentHashMap<Integer, String> soft = new SoftConcurrentHashMap<>();
+        CompactSoftConcurrentMap<Integer, String> compact = new CompactSoftConcurrentMap<>();
+        for (int i = 0; i < count; i++) {
+            Integer key = 1_000 + i;
+            String value = "v" + i;
+            payload[2 * i] = key;
+            payload[2 * i + 1] = value;
+            soft.putAsSoft(key, value);
+            compact.putAsSoft(key, value);
+        }
+        //measures the overhead of the maps only, the keys and values are shared by both
+        GraphLayout keysAndValues = GraphLayout.parseInstance(payload);
+        long softOverhead = GraphLayout.parseInstance(soft).subtract(keysAndValues).totalSize() / count;
+        long compactOverhead = GraphLayout.parseInstance(compact).subtract(keysAndValues).totalSize() / count;
+        Assert.assertTrue("overhead per entry: " + compactOverhead + " vs " + softOverhead,
+                compactOverhead * 4 < softOverhead * 3);
+    }
+
+    private static SoftProbingTable.Reference<String> referenceOf(CompactSoftConcurrentMap<String, String> map,
+                                                                String key) {
+        AtomicReference<SoftProbingTable.Reference<String>> found = new AtomicReference<>();
+        map.table.forEach((k, ref, value) -> {
+            if (key.equals(k)) {
+                found.set(ref);
+            }
+        });
+        Assert.assertNotNull(found.get());
+        return found.get();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ConcurrentBloomFilterTest
+ *
+ * @author xasync.com
+ */
+public class ConcurrentBloomFilterTest {
+
+    @Test
+    public void testConcurrentPutAndFalsePositives() throws InterruptedException {
+        ConcurrentBloomFilter<Integer> filter = new ConcurrentBloomFilter<>(100_000, 0.01);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int base = t * 25_000;
+            Thread thread = new Thread(() -> {
+                for (int i = base; i < base + 25_000; i++) {
+                    filter.put(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 100_000; i++) {
+            Assert.assertTrue(filter.mightContain(i));
+        }
+        int falsePositives = 0;
+        for (int i = 100_000; i < 200_000; i++) {
+            if (filter.mightContain(i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 2_000);
+        Assert.assertTrue(filter.expectedFpp() < 0.02);
+        Assert.assertEquals(100_000, filter.approximateElementCount(), 5_000);
+    }
+
+    @Test
+    public void testMerge() {
+        ConcurrentBloomFilter<String> first = new ConcurrentBloomFilter<>(1_000, 0.01);
+        ConcurrentBloomFilter<String> second = new ConcurrentBloomFilter<>(1_000, 0.01);
+        Assert.assertTrue(first.put("a"));
+        Assert.assertFalse(first.put("a"));
+        second.put("b");
+        Assert.assertFalse(first.mightContain("b"));
+        first.merge(second);
+        Assert.assertTrue(first.mightContain("a"));
+        Assert.assertTrue(first.mightContain("b"));
+        Assert.assertFalse(second.mightContain("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeRejectsDifferentSizes() {
+        new ConcurrentBloomFilter<String>(1_000, 0.01).merge(new ConcurrentBloomFilter<>(100_000, 0.01));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CountMinSketchTest
+ *
+ * @author xasync.com
+ */
+public class CountMinSketchTest {
+
+    @Test
+    public void testConcurrentIncrement() throws InterruptedException {
+        CountMinSketch<Integer> sketch = CountMinSketch.withAccuracy(0.001, 0.99, 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    for (int j = 0; j <= i % 10; j++) {
+                        sketch.increment(i);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long additions = sketch.additions();
+        Assert.assertEquals(4 * 5_500, additions);
+        for (int i = 0; i < 1_000; i++) {
+            long frequency = sketch.frequency(i);
+            long expected = 4L * (i % 10 + 1);
+            Assert.assertTrue(frequency >= expected);
+            Assert.assertTrue(frequency <= expected + additions / 1_000);
+        }
+        Assert.assertEquals(0, sketch.frequency(-1), additions / 1_000);
+    }
+
+    @Test
+    public void testAgingHalvesCounts() {
+        CountMinSketch<String> sketch = new CountMinSketch<>(1_024, 4, 10_000);
+        for (int i = 0; i < 20_000; i++) {
+            sketch.increment("hot");
+        }
+        Assert.assertTrue(sketch.frequency("hot") < 15_000);
+        Assert.assertTrue(sketch.additions() < 10_000);
+
+        CountMinSketch<String> manual = new CountMinSketch<>(1_024, 4, 0);
+        manual.add("a", 7);
+        manual.age();
+        Assert.assertEquals(3, manual.frequency("a"));
+        Assert.assertEquals(4, manual.additions());
+    }
+
+    @Test
+    public void testMerge() {
+        CountMinSketch<String> first = new CountMinSketch<>(256, 3, 0);
+        CountMinSketch<String> second = new CountMinSketch<>(256, 3, 0);
+        first.add("a", 3);
+        second.add("a", 2);
+        second.add("b", 5);
+        first.merge(second);
+        Assert.assertEquals(5, first.frequency("a"));
+        Assert.assertEquals(5, first.frequency("b"));
+        Assert.assertEquals(10, first.additions());
+        try {
+            first.merge(new CountMinSketch<>(512, 3, 0));
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // the dimensions are different
+        }
+    }
+}
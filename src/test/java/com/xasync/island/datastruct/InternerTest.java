@@ -0,0 +1,87 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * InternerTest
+ *
+ * @author xasync.com
+ */
+public class InternerTest {
+
+    @Test
+    public void testInternCanonicalizesEqualInstances() throws Exception {
+        Interner<String> interner = Interner.<String>builder().build();
+        String first = new String("CN");
+        Assert.assertSame(first, interner.intern(first));
+        Assert.assertSame(first, interner.intern(new String("CN")));
+        Assert.assertSame(first, interner.intern(new String("CN")));
+        Assert.assertEquals("US", interner.intern(new String("US")));
+        Assert.assertEquals(2, interner.size());
+        Assert.assertEquals(4, interner.requestCount());
+        Assert.assertEquals(2, interner.duplicateCount());
+        Assert.assertEquals(0.5, interner.dedupRatio(), 0.0);
+
+        //the racing threads agree on one canonical instance
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            futures.add(executor.submit(() -> interner.intern(new String("SKU-42"))));
+        }
+        String canonical = futures.get(0).get();
+        for (Future<String> future : futures) {
+            Assert.assertSame(canonical, future.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testUnusedCanonicalInstancesAreReclaimed() {
+        Interner<String> interner = Interner.<String>builder().weakReferences().build();
+        String retained = interner.intern(new String("retained"));
+        for (int i = 0; i < 1_000; i++) {
+            interner.intern(new String("k" + i));
+        }
+        for (int i = 0; i < 50 && interner.size() > 1; i++) {
+            System.gc();
+            sleep(100);
+        }
+        Assert.assertEquals(1, interner.size());
+        Assert.assertSame(retained, interner.intern(new String("retained")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStrongReferencesAreRejected() {
+        Interner.builder().strength(ReferenceStrength.STRONG);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LongSoftConcurrentMapTest
+ *
+ * @author xasync.com
+ */
+public class LongSoftConcurrentMapTest {
+
+    @Test
+    public void testPutGetAndRemove() {
+        LongSoftConcurrentMap<String> map = new LongSoftConcurrentMap<>();
+        for (long i = -50_000; i < 50_000; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        Assert.assertEquals(100_000, map.size());
+        Assert.assertEquals("v0", map.getOnSoft(0));
+        Assert.assertEquals("v-1", map.getOnSoft(-1));
+        Assert.assertNull(map.getOnSoft(Long.MAX_VALUE));
+
+        for (long i = -50_000; i < 50_000; i += 2) {
+            Assert.assertEquals("v" + i, map.remove(i));
+        }
+        Assert.assertEquals(50_000, map.size());
+        for (long i = -50_000; i < 50_000; i++) {
+            Assert.assertEquals(i % 2 == 0 ? null : "v" + i, map.getOnSoft(i));
+        }
+
+        AtomicInteger visited = new AtomicInteger();
+        map.forEachOnSoft((k, v) -> {
+            Assert.assertEquals("v" + k, v);
+            visited.incrementAndGet();
+        });
+        Assert.assertEquals(50_000, visited.get());
+
+        map.putAsSoftIfAbsent(1, "other");
+        Assert.assertEquals("v1", map.getOnSoft(1));
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        LongSoftConcurrentMap<Long> map = new LongSoftConcurrentMap<>();
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger mismatches = new AtomicInteger();
+        AtomicInteger retained = new AtomicInteger();
+        //the values are held strongly, so that GC never clears them under the pressure of the other tests
+        Long[][] values = new Long[8][20_000];
+        for (int t = 0; t < 8; t++) {
+            long base = t * 1_000_000L;
+            Long[] held = values[t];
+            Thread thread = new Thread(() -> {
+                for (long i = base; i < base + 20_000; i++) {
+                    held[(int) (i - base)] = i;
+                    map.putAsSoft(i, held[(int) (i - base)]);
+                    Long value = map.getOnSoft(i);
+                    if (value == null || value != i) {
+                        mismatches.incrementAndGet();
+                    }
+                    if (i % 3 == 0) {
+                        map.remove(i);
+                    } else {
+                        retained.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, mismatches.get());
+        Assert.assertEquals(retained.get(), map.size());
+        //keeps the values reachable until the size is checked
+        Assert.assertEquals(8, values.length);
+    }
+}
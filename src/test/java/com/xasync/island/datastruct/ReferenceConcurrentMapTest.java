@@ -0,0 +1,101 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ReferenceConcurrentMapTest
+ *
+ * @author xasync.com
+ */
+public class ReferenceConcurrentMapTest {
+
+    @Test
+    public void testStrongMapping() {
+        ReferenceConcurrentMap<String, Integer> map = ReferenceConcurrentMap.<String, Integer>builder().build();
+        Assert.assertNull(map.put("a", 1));
+        Assert.assertEquals(Integer.valueOf(1), map.put("a", 2));
+        Assert.assertEquals(Integer.valueOf(2), map.get(new String("a")));
+        Assert.assertEquals(Integer.valueOf(2), map.putIfAbsent("a", 3));
+        Assert.assertEquals(Integer.valueOf(4), map.computeIfAbsent("b", k -> 4));
+        AtomicInteger visited = new AtomicInteger();
+        map.forEach((k, v) -> visited.incrementAndGet());
+        Assert.assertEquals(2, visited.get());
+        Assert.assertEquals(Integer.valueOf(2), map.remove("a"));
+        Assert.assertFalse(map.containsKey("a"));
+        Assert.assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testWeakKeysAreComparedByIdentity() {
+        ReferenceConcurrentMap<String, Integer> map = ReferenceConcurrentMap.<String, Integer>builder()
+                .weakKeys()
+                .build();
+        String first = new String("key");
+        String second = new String("key");
+        map.put(first, 1);
+        map.put(second, 2);
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals(Integer.valueOf(1), map.get(first));
+        Assert.assertEquals(Integer.valueOf(2), map.get(second));
+        Assert.assertNull(map.get("key"));
+        Assert.assertEquals(Integer.valueOf(1), map.remove(first));
+        Assert.assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testCollectedKeysAndValuesAreReclaimed() {
+        ReferenceConcurrentMap<Object, Object> weakKeys = ReferenceConcurrentMap.builder()
+                .weakKeys()
+                .build();
+        ReferenceConcurrentMap<Integer, Object> weakValues = ReferenceConcurrentMap.<Integer, Object>builder()
+                .weakValues()
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .build();
+        Object pinned = new Object();
+        weakKeys.put(pinned, "pinned");
+        for (int i = 0; i < 100; i++) {
+            weakKeys.put(new Object(), "v" + i);
+            weakValues.put(i, new Object());
+        }
+        for (int i = 0; i < 50 && (weakKeys.size() > 1 || weakValues.size() > 1); i++) {
+            System.gc();
+            weakValues.put(-1, pinned);
+            sleep(100);
+        }
+        Assert.assertEquals(1, weakKeys.size());
+        Assert.assertEquals("pinned", weakKeys.get(pinned));
+        Assert.assertEquals(1, weakValues.size());
+        Assert.assertSame(pinned, weakValues.get(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSoftKeysAreRejected() {
+        ReferenceConcurrentMap.builder().keyStrength(ReferenceStrength.SOFT);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,926 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.StreamSupport;
+
+/**
+ * SoftConcurrentHashMapTest
+ *
+ * @author xasync.com
+ */
+public class SoftConcurrentHashMapTest {
+
+    @Test
+    public void testPutAndGet() {
+        SoftConcurrentHashMap<String, String> map = new SoftConcurrentHashMap<>();
+        map.putAsSoft("cat", "meow");
+        Assert.assertEquals("meow", map.getOnSoft("cat"));
+        Assert.assertEquals("woof", map.getOnSoftOrDefault("dog", "woof"));
+    }
+
+    @Test
+    public void testBoundedBySize() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumSize(100)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        Assert.assertEquals(100, map.size());
+        Assert.assertEquals(100, map.weightedSize());
+
+        map.remove(999);
+        map.clear();
+        Assert.assertEquals(0, map.weightedSize());
+    }
+
+    @Test
+    public void testBoundedByWeight() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumWeight(1000)
+                .weigher((k, v) -> v.length())
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            map.putAsSoft(i, "0123456789");
+        }
+        Assert.assertTrue(map.weightedSize() <= 1000);
+        Assert.assertEquals(map.size() * 10L, map.weightedSize());
+    }
+
+    @Test
+    public void testBoundedByLargeByteWeight() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+        //a budget of 1 GiB must not become a sketch of 2^30 counters
+        SoftConcurrentHashMap<Integer, byte[]> map = SoftConcurrentHashMap.<Integer, byte[]>builder()
+                .maximumWeight(1L << 30)
+                .weigher((k, v) -> v.length)
+                .build();
+        Assert.assertTrue(runtime.totalMemory() - runtime.freeMemory() - usedBefore < 64L << 20);
+
+        for (int i = 0; i < 10_000; i++) {
+            map.putAsSoft(i, new byte[16]);
+        }
+        Assert.assertEquals(10_000, map.size());
+        Assert.assertEquals(160_000, map.weightedSize());
+    }
+
+    @Test
+    public void testRemovalsThroughViewsAreBooked() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumWeight(1000)
+                .weigher((k, v) -> v.length())
+                .build();
+        for (int i = 0; i < 10; i++) {
+            map.putAsSoft(i, "0123456789");
+        }
+        Assert.assertEquals(100, map.weightedSize());
+        Assert.assertTrue(map.keySet().remove(0));
+        Assert.assertEquals(90, map.weightedSize());
+        Assert.assertTrue(map.values().removeIf(node -> node.getIndex() < 3));
+        Assert.assertEquals(70, map.weightedSize());
+        Iterator<Map.Entry<Integer, SoftConcurrentHashMap.SoftDataNode<Integer, String>>> entries =
+                map.entrySet().iterator();
+        entries.next();
+        entries.remove();
+        Assert.assertEquals(60, map.weightedSize());
+        Assert.assertTrue(map.entrySet().remove(new AbstractMap.SimpleImmutableEntry<>(5, map.get(5))));
+        Assert.assertEquals(50, map.weightedSize());
+        Assert.assertEquals(5, map.size());
+
+        //the nodes created by the caller would bypass the policy
+        SoftConcurrentHashMap.SoftDataNode<Integer, String> node = new SoftConcurrentHashMap.SoftDataNode<>(6, "v");
+        for (Runnable write : Arrays.<Runnable>asList(() -> map.put(6, node), () -> map.putIfAbsent(20, node),
+                () -> map.replace(6, node), () -> map.compute(6, (k, old) -> node),
+                () -> map.computeIfAbsent(20, k -> node), () -> map.merge(6, node, (a, b) -> b))) {
+            try {
+                write.run();
+                Assert.fail("the node is written directly");
+            } catch (UnsupportedOperationException expected) {
+                //the map created by the builder is written by putAsSoft
+            }
+        }
+        Assert.assertEquals(50, map.weightedSize());
+
+        //the plain map keeps the inherited writers
+        SoftConcurrentHashMap<Integer, String> plain = new SoftConcurrentHashMap<>();
+        plain.put(1, node);
+        Assert.assertEquals("v", plain.getOnSoft(1));
+    }
+
+    @Test
+    public void testBoundedByConcurrentWriters() throws InterruptedException {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumSize(100)
+                .build();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int base = t * 100_000;
+            Thread writer = new Thread(() -> {
+                for (int i = base; i < base + 20_000; i++) {
+                    map.putAsSoft(i, "v" + i);
+                    if (i % 7 == 0) {
+                        map.remove(i);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        //the weighted size replays the buffered writes, the last removals may leave it under the maximum
+        long weightedSize = map.weightedSize();
+        Assert.assertTrue(weightedSize <= 100 && weightedSize >= 90);
+        Assert.assertEquals(weightedSize, map.size());
+    }
+
+    @Test
+    public void testHotEntriesStayResident() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumSize(100)
+                .build();
+        for (int i = 0; i < 10; i++) {
+            map.putAsSoft(i, "hot" + i);
+        }
+        //a scan of cold keys should not flush the hot working set which keeps being read
+        for (int i = 1000; i < 10000; i++) {
+            map.putAsSoft(i, "cold" + i);
+            if (i % 100 == 0) {
+                for (int j = 0; j < 10; j++) {
+                    map.getOnSoft(j);
+                }
+            }
+        }
+        int resident = 0;
+        for (int i = 0; i < 10; i++) {
+            resident += map.getOnSoft(i) != null ? 1 : 0;
+        }
+        Assert.assertEquals(10, resident);
+        Assert.assertEquals(100, map.size());
+    }
+
+    @Test
+    public void testReclaimOnWrite() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .reclaimBatchSize(10)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        //simulates that GC collects the values
+        for (int i = 0; i < 50; i++) {
+            SoftConcurrentHashMap.SoftDataNode<Integer, String> node = map.get(i);
+            node.clear();
+            node.enqueue();
+        }
+        map.putAsSoft(100, "v100");
+        Assert.assertEquals(91, map.size());
+        Assert.assertEquals(10, map.reclaimBacklog());
+        for (int i = 0; i < 10; i++) {
+            map.putAsSoft(100, "v100");
+        }
+        Assert.assertEquals(51, map.size());
+        Assert.assertEquals(0, map.reclaimBacklog());
+    }
+
+    @Test
+    public void testReclaimInBackground() throws InterruptedException {
+        SoftConcurrentHashMap<Integer, String> map = new SoftConcurrentHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            SoftConcurrentHashMap.SoftDataNode<Integer, String> node = map.get(i);
+            node.clear();
+            node.enqueue();
+        }
+        for (int i = 0; i < 100 && map.size() > 500; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(500, map.size());
+        Assert.assertEquals(0, map.reclaimBacklog());
+    }
+
+    @Test
+    public void testComputeIfAbsentOnSoftCoalescesLoads() throws Exception {
+        SoftConcurrentHashMap<String, String> map = new SoftConcurrentHashMap<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return map.computeIfAbsentOnSoft("cat", k -> {
+                    loads.incrementAndGet();
+                    sleep(100);
+                    return "meow";
+                });
+            }));
+        }
+        start.countDown();
+        for (Future<String> future : futures) {
+            Assert.assertEquals("meow", future.get());
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testComputeIfAbsentOnSoftReplacesCollectedNode() {
+        SoftConcurrentHashMap<String, String> map = new SoftConcurrentHashMap<>();
+        map.putAsSoft("cat", "meow");
+        map.get("cat").clear();
+        Assert.assertEquals("purr", map.computeIfAbsentOnSoft("cat", k -> "purr"));
+        Assert.assertEquals("purr", map.getOnSoft("cat"));
+        Assert.assertEquals("purr", map.computeIfAbsentOnSoft("cat", k -> "hiss"));
+
+        map.get("cat").clear();
+        map.putAsSoftIfAbsent("cat", "hiss");
+        Assert.assertEquals("hiss", map.getOnSoft("cat"));
+    }
+
+    @Test
+    public void testGetOrLoad() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .loader(k -> "v" + k)
+                .build();
+        Assert.assertEquals("v1", map.getOrLoad(1));
+        Assert.assertEquals("v1", map.getOnSoft(1));
+    }
+
+    @Test
+    public void testExpireAfterWrite() {
+        AtomicLong ticker = new AtomicLong();
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .expireAfterWrite(10, TimeUnit.SECONDS)
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .ticker(ticker::get)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        Assert.assertEquals("v1", map.getOnSoft(1));
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        Assert.assertNull(map.getOnSoft(1));
+        //the expired entries are reclaimed by the timing wheel without reading them
+        map.putAsSoft(100, "v100");
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals("v100", map.getOnSoft(100));
+    }
+
+    @Test
+    public void testExpireAfterAccess() {
+        AtomicLong ticker = new AtomicLong();
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .ticker(ticker::get)
+                .build();
+        map.putAsSoft(1, "v1");
+        map.putAsSoft(2, "v2");
+        for (int i = 0; i < 5; i++) {
+            ticker.addAndGet(TimeUnit.SECONDS.toNanos(40));
+            Assert.assertEquals("v1", map.getOnSoft(1));
+            map.putAsSoft(3, "v3");
+        }
+        Assert.assertNull(map.get(2));
+        Assert.assertEquals("v1", map.getOnSoft(1));
+        ticker.addAndGet(TimeUnit.HOURS.toNanos(3));
+        map.putAsSoft(3, "v3");
+        Assert.assertEquals(1, map.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWeigherRequiresMaximumWeight() {
+        SoftConcurrentHashMap.<Integer, String>builder()
+                .weigher((k, v) -> 1)
+                .build();
+    }
+
+    @Test
+    public void testLiveViewsSkipCollectedValues() {
+        SoftConcurrentHashMap<Integer, Integer> map = new SoftConcurrentHashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            map.putAsSoft(i, i);
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            map.get(i).clear();
+        }
+        Collection<Integer> values = map.valuesOnSoft();
+        Assert.assertEquals(5_000, values.stream().filter(v -> v % 2 == 1).count());
+        Assert.assertTrue(values.stream().allMatch(Objects::nonNull));
+        Assert.assertEquals(5_000, StreamSupport.stream(map.spliteratorOnSoft(), true).count());
+        Assert.assertTrue(map.entrySetOnSoft().contains(new AbstractMap.SimpleImmutableEntry<>(1, 1)));
+        Assert.assertFalse(map.entrySetOnSoft().contains(new AbstractMap.SimpleImmutableEntry<>(2, 2)));
+        Assert.assertFalse(map.entrySetOnSoft().contains(new AbstractMap.SimpleImmutableEntry<>(null, 1)));
+        Assert.assertFalse(map.entrySetOnSoft().remove(new AbstractMap.SimpleImmutableEntry<>(null, 1)));
+
+        long sum = map.reduceOnSoft(1, (k, v) -> (long) v, Long::sum);
+        Assert.assertEquals(25_000_000L, sum);
+        AtomicInteger visited = new AtomicInteger();
+        map.forEachOnSoft(1, (k, v) -> visited.incrementAndGet());
+        Assert.assertEquals(5_000, visited.get());
+
+        //the views are live
+        map.putAsSoft(10_001, 10_001);
+        Assert.assertEquals(Integer.valueOf(10_001), map.reduceValuesOnSoft(1, Math::max));
+        Iterator<Map.Entry<Integer, Integer>> it = map.entrySetOnSoft().iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey() > 100) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(50, map.valuesOnSoft().stream().count());
+    }
+
+    @Test
+    public void testRecordStats() throws Exception {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumSize(10)
+                .loader(String::valueOf)
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .recordStats("testRecordStats")
+                .build();
+        for (int i = 0; i < 20; i++) {
+            map.getOrLoad(i);
+        }
+        Integer resident = map.keys().nextElement();
+        Assert.assertEquals(String.valueOf(resident), map.getOnSoft(resident));
+        SoftConcurrentHashMap.SoftDataNode<Integer, String> node = map.get(resident);
+        node.clear();
+        node.enqueue();
+        map.putAsSoft(100, "100");
+
+        CacheStats stats = map.stats();
+        Assert.assertEquals(20, stats.loadSuccessCount());
+        Assert.assertEquals(20, stats.missCount());
+        Assert.assertEquals(1, stats.hitCount());
+        Assert.assertEquals(11, stats.evictionCount());
+        Assert.assertEquals(1, stats.collectedCount());
+        Assert.assertTrue(stats.reclaimCount() > 0);
+        Assert.assertEquals(stats.hitCount() + stats.missCount(), stats.requestCount());
+
+        ObjectName objectName = new ObjectName("com.xasync.island:type=SoftConcurrentHashMap,name=\"testRecordStats\"");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assert.assertEquals(20L, server.getAttribute(objectName, "LoadSuccessCount"));
+        map.close();
+        Assert.assertFalse(server.isRegistered(objectName));
+
+        Assert.assertEquals(CacheStats.empty(), new SoftConcurrentHashMap<Integer, String>().stats());
+    }
+
+    @Test
+    public void testStatsMBeanNameIsReusable() throws Exception {
+        ObjectName objectName = new ObjectName("com.xasync.island:type=SoftConcurrentHashMap,name=\"reusable\"");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        SoftConcurrentHashMap<Integer, String> first = SoftConcurrentHashMap.<Integer, String>builder()
+                .recordStats("reusable")
+                .build();
+        first.close();
+        first.close();
+        SoftConcurrentHashMap<Integer, String> second = SoftConcurrentHashMap.<Integer, String>builder()
+                .recordStats("reusable")
+                .build();
+        //closing the first map again never unregisters the bean of the second one
+        first.close();
+        Assert.assertTrue(server.isRegistered(objectName));
+        second.getOnSoft(1);
+        Assert.assertEquals(1L, server.getAttribute(objectName, "MissCount"));
+        second.close();
+
+        //a map discarded without closing is unregistered after it is collected
+        SoftConcurrentHashMap.<Integer, String>builder()
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .recordStats("reusable")
+                .build();
+        for (int i = 0; i < 50 && server.isRegistered(objectName); i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Assert.assertFalse(server.isRegistered(objectName));
+        SoftConcurrentHashMap.<Integer, String>builder()
+                .recordStats("reusable")
+                .build()
+                .close();
+    }
+
+    @Test
+    public void testOffHeapTierPromotesCollectedAndEvictedValues() {
+        ValueCodec<String> codec = new ValueCodec<String>() {
+            @Override
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumSize(100)
+                .offHeap(codec, 1 << 20)
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .build();
+        for (int i = 0; i < 1_000; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        Assert.assertTrue(map.size() <= 100);
+        SoftConcurrentHashMap.SoftDataNode<Integer, String> node = map.get(map.keys().nextElement());
+        node.clear();
+        node.enqueue();
+        for (int i = 0; i < 1_000; i++) {
+            Assert.assertEquals("v" + i, map.getOnSoft(i));
+        }
+
+        //the removal drops the record, so the value is never promoted again
+        map.remove(1);
+        Assert.assertEquals("v2", map.getOnSoft(2));
+        Assert.assertTrue(map.remove(2, map.get(2)));
+        Assert.assertNull(map.getOnSoft(1));
+        Assert.assertNull(map.getOnSoft(2));
+        map.clear();
+        Assert.assertNull(map.getOnSoft(3));
+    }
+
+    @Test
+    public void testOffHeapTierDecodesOutsideTheLock() {
+        AtomicReference<SoftConcurrentHashMap<Integer, String>> self = new AtomicReference<>();
+        AtomicInteger decodes = new AtomicInteger();
+        ValueCodec<String> codec = new ValueCodec<String>() {
+            @Override
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                String value = new String(bytes, StandardCharsets.UTF_8);
+                //the first decoding writes the same key, which would be a recursive update under the lock
+                if (decodes.getAndIncrement() == 0) {
+                    self.get().putAsSoft(Integer.parseInt(value.substring(1)), "written");
+                }
+                return value;
+            }
+        };
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumSize(10)
+                .offHeap(codec, 1 << 20)
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .build();
+        self.set(map);
+        for (int i = 0; i < 100; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        int evicted = 0;
+        while (Objects.nonNull(map.get(evicted))) {
+            evicted++;
+        }
+        //the concurrent write wins over the promotion of the record decoded before it
+        Assert.assertEquals("written", map.getOnSoft(evicted));
+        Assert.assertEquals(1, decodes.get());
+        int other = evicted + 1;
+        while (Objects.nonNull(map.get(other))) {
+            other++;
+        }
+        Assert.assertEquals("v" + other, map.getOnSoft(other));
+    }
+
+    @Test
+    public void testOffHeapTierDropsOldestRecordsWhenFull() {
+        ValueCodec<byte[]> codec = new ValueCodec<byte[]>() {
+            @Override
+            public byte[] encode(byte[] value) {
+                return value;
+            }
+
+            @Override
+            public byte[] decode(byte[] bytes) {
+                return bytes;
+            }
+        };
+        SoftConcurrentHashMap<Integer, byte[]> map = SoftConcurrentHashMap.<Integer, byte[]>builder()
+                .maximumSize(10)
+                .offHeap(codec, 64 * 1024)
+                .build();
+        for (int i = 0; i < 1_000; i++) {
+            map.putAsSoft(i, new byte[1024]);
+        }
+        Assert.assertNotNull(map.getOnSoft(999));
+        Assert.assertNull(map.getOnSoft(0));
+    }
+
+    @Test
+    public void testRefreshAfterWriteServesStaleValue() {
+        AtomicLong time = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+        List<Runnable> refreshings = new ArrayList<>();
+        SoftConcurrentHashMap<String, Integer> map = SoftConcurrentHashMap.<String, Integer>builder()
+                .refreshAfterWrite(1, TimeUnit.MINUTES)
+                .loader(k -> loads.incrementAndGet())
+                .executor(refreshings::add)
+                .ticker(time::get)
+                .build();
+        Assert.assertEquals(Integer.valueOf(1), map.getOrLoad("price"));
+
+        time.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        Assert.assertEquals(Integer.valueOf(1), map.getOnSoft("price"));
+        Assert.assertEquals(Integer.valueOf(1), map.getOnSoft("price"));
+        Assert.assertEquals(1, refreshings.size());
+        Assert.assertEquals(1, loads.get());
+
+        refreshings.remove(0).run();
+        Assert.assertEquals(Integer.valueOf(2), map.getOnSoft("price"));
+        Assert.assertTrue(refreshings.isEmpty());
+    }
+
+    @Test
+    public void testFailedRefreshIsReportedAndDelayed() throws InterruptedException {
+        AtomicLong time = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+        List<Runnable> refreshings = new ArrayList<>();
+        SoftConcurrentHashMap<String, Integer> map = SoftConcurrentHashMap.<String, Integer>builder()
+                .refreshAfterWrite(1, TimeUnit.MINUTES)
+                .loader(k -> {
+                    if (loads.incrementAndGet() == 2) {
+                        throw new IllegalStateException("the price service is down");
+                    }
+                    return loads.get();
+                })
+                .executor(refreshings::add)
+                .ticker(time::get)
+                .build();
+        Assert.assertEquals(Integer.valueOf(1), map.getOrLoad("price"));
+
+        time.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        Assert.assertEquals(Integer.valueOf(1), map.getOnSoft("price"));
+        List<Throwable> reported = new ArrayList<>();
+        Thread refresher = new Thread(refreshings.remove(0));
+        refresher.setUncaughtExceptionHandler((t, ex) -> reported.add(ex));
+        refresher.start();
+        refresher.join();
+        Assert.assertEquals(1, reported.size());
+        Assert.assertTrue(reported.get(0) instanceof IllegalStateException);
+
+        //the stale value is still served, and the next refreshing waits for another interval
+        Assert.assertEquals(Integer.valueOf(1), map.getOnSoft("price"));
+        Assert.assertTrue(refreshings.isEmpty());
+        time.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        Assert.assertEquals(Integer.valueOf(1), map.getOnSoft("price"));
+        Assert.assertTrue(refreshings.isEmpty());
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertEquals(Integer.valueOf(1), map.getOnSoft("price"));
+        refreshings.remove(0).run();
+        Assert.assertEquals(Integer.valueOf(3), map.getOnSoft("price"));
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testShedColdestEntries() {
+        AtomicLong time = new AtomicLong();
+        List<Long> thresholds = usageThresholdsOfHeap();
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .shedOnMemoryPressure()
+                .ticker(time::get)
+                .build();
+        //the thresholds are global to the JVM, so they are only set by shedOnMemoryPressure(thresholdRatio)
+        Assert.assertEquals(thresholds, usageThresholdsOfHeap());
+        for (int i = 0; i < 1_000; i++) {
+            time.addAndGet(TimerWheel.TICK_NANOS);
+            map.putAsSoft(i, "v" + i);
+        }
+        //the first 100 keys become the hottest
+        for (int i = 0; i < 100; i++) {
+            time.addAndGet(TimerWheel.TICK_NANOS);
+            map.getOnSoft(i);
+        }
+        Assert.assertEquals(100, map.shed(100));
+        Assert.assertEquals(900, map.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals("v" + i, map.getOnSoft(i));
+        }
+        Assert.assertEquals(45, MemoryPressureShedder.shedRound(map));
+        Assert.assertEquals(855, map.size());
+    }
+
+    @Test
+    public void testStrongHotSetPinsHotValues() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .strongHotSet(64)
+                .build();
+        for (int i = 0; i < 1_000; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                map.getOnSoft(i % 10 == 0 && round > 0 ? i / 10 : i);
+            }
+        }
+        int pinnedHotKeys = 0;
+        int pinned = 0;
+        ManagedDataNode<Integer, String> hot = null;
+        for (int i = 0; i < 1_000; i++) {
+            ManagedDataNode<Integer, String> node = (ManagedDataNode<Integer, String>) map.get(i);
+            pinned += node.isPinned() ? 1 : 0;
+            if (node.isPinned() && i < 100) {
+                pinnedHotKeys++;
+                hot = node;
+            }
+        }
+        Assert.assertTrue(pinned <= 64);
+        Assert.assertTrue("pinned hot keys: " + pinnedHotKeys, pinnedHotKeys >= 40);
+
+        //the removed node is unpinned
+        map.remove(hot.getIndex());
+        Assert.assertFalse(hot.isPinned());
+    }
+
+    @Test
+    public void testInvalidateTag() {
+        SoftConcurrentHashMap<String, String> map = new SoftConcurrentHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            map.putAsSoft("a" + i, "v" + i, "tenant-a", i % 2 == 0 ? "even" : "odd");
+            map.putAsSoft("b" + i, "v" + i, "tenant-b");
+        }
+        map.putAsSoft("plain", "v");
+        //the tags are replaced if the key is put again
+        map.putAsSoft("a0", "v0", "tenant-b");
+
+        Assert.assertEquals(9, map.invalidateTag("tenant-a"));
+        Assert.assertEquals(0, map.invalidateTag("tenant-a"));
+        Assert.assertEquals(12, map.size());
+        Assert.assertEquals("v0", map.getOnSoft("a0"));
+        Assert.assertNull(map.getOnSoft("a1"));
+        //the removed entries are dropped from the index of their other tags
+        Assert.assertEquals(0, map.invalidateTag("odd"));
+        Assert.assertEquals(0, map.invalidateTag("even"));
+
+        map.putAsSoft("b0", "untagged");
+        Assert.assertEquals(10, map.invalidateTag("tenant-b"));
+        Assert.assertEquals("untagged", map.getOnSoft("b0"));
+        Assert.assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testInvalidateAllLazily() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumSize(1_000)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            map.putAsSoft(i, "v" + i, i % 2 == 0 ? "even" : "odd");
+        }
+        map.invalidateAll();
+        //the stale entries are still mapped until they are read
+        Assert.assertEquals(100, map.size());
+        Assert.assertTrue(map.valuesOnSoft().isEmpty());
+        Assert.assertNull(map.getOnSoft(1));
+        Assert.assertEquals(99, map.size());
+
+        map.putAsSoftIfAbsent(2, "new");
+        Assert.assertEquals("new", map.getOnSoft(2));
+        map.putAsSoft(4, "tagged", "even");
+        Assert.assertEquals(1, map.invalidateTag("even"));
+        Assert.assertEquals(0, map.invalidateTag("odd"));
+        Assert.assertEquals(Collections.singletonList("new"), new ArrayList<>(map.valuesOnSoft()));
+
+        SoftConcurrentHashMap<Integer, String> plain = new SoftConcurrentHashMap<>();
+        plain.putAsSoft(1, "v1");
+        plain.invalidateAll();
+        Assert.assertTrue(plain.isEmpty());
+    }
+
+    @Test
+    public void testInvalidateAllUnpinsHotValues() {
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .strongHotSet(16)
+                .nearCache(16)
+                .build();
+        for (int i = 0; i < 10; i++) {
+            map.putAsSoft(i, "v" + i);
+            map.getOnSoft(i);
+            map.getOnSoft(i);
+        }
+        ManagedDataNode<Integer, String> hot = (ManagedDataNode<Integer, String>) map.get(1);
+        Assert.assertTrue(hot.isPinned());
+
+        map.invalidateAll();
+        Assert.assertFalse(hot.isPinned());
+        Assert.assertEquals(10, map.size());
+        Assert.assertNull(map.getOnSoft(1));
+        map.putAsSoft(1, "new");
+        Assert.assertEquals("new", map.getOnSoft(1));
+    }
+
+    @Test
+    public void testNearCacheSeesWritesOfOtherThreads() throws Exception {
+        SoftConcurrentHashMap<Integer, Long> map = SoftConcurrentHashMap.<Integer, Long>builder()
+                .nearCache(16)
+                .maximumSize(100)
+                .build();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        map.putAsSoft(1, 0L);
+        Assert.assertEquals(Long.valueOf(0), map.getOnSoft(1));
+        writer.submit(() -> map.putAsSoft(1, 1L)).get();
+        Assert.assertEquals(Long.valueOf(1), map.getOnSoft(1));
+        writer.submit(() -> map.remove(1)).get();
+        Assert.assertNull(map.getOnSoft(1));
+
+        //the reader never goes back to an older value once it has seen a newer one
+        Future<?> writes = writer.submit(() -> {
+            for (long i = 0; i < 200_000; i++) {
+                map.putAsSoft(1, i);
+            }
+        });
+        long last = -1;
+        while (!writes.isDone()) {
+            Long value = map.getOnSoft(1);
+            if (Objects.nonNull(value)) {
+                Assert.assertTrue(value + " after " + last, value >= last);
+                last = value;
+            }
+        }
+        writes.get();
+        Assert.assertEquals(Long.valueOf(199_999), map.getOnSoft(1));
+
+        //the evicted entries are invalidated too
+        for (int i = 100; i < 110; i++) {
+            map.putAsSoft(i, (long) i);
+            Assert.assertEquals(Long.valueOf(i), map.getOnSoft(i));
+        }
+        writer.submit(() -> {
+            for (int i = 1_000; i < 2_000; i++) {
+                map.putAsSoft(i, (long) i);
+            }
+        }).get();
+        writer.shutdown();
+        for (int i = 100; i < 110; i++) {
+            Assert.assertEquals(Objects.nonNull(map.get(i)), Objects.nonNull(map.getOnSoft(i)));
+        }
+    }
+
+    @Test
+    public void testNearCacheReadsValuesPromotedFromOffHeapTier() {
+        ValueCodec<String> codec = new ValueCodec<String>() {
+            @Override
+            public byte[] encode(String value) {
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .nearCache(16)
+                .maximumSize(10)
+                .offHeap(codec, 1 << 20)
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        //the evicted keys are only in the off-heap tier, the first read promotes them and the next hits the near cache
+        int offHeapOnly = 0;
+        for (int i = 0; i < 100; i++) {
+            if (Objects.isNull(map.get(i))) {
+                offHeapOnly++;
+                Assert.assertEquals("v" + i, map.getOnSoft(i));
+                Assert.assertEquals("v" + i, map.getOnSoft(i));
+            }
+        }
+        Assert.assertTrue(offHeapOnly > 0);
+    }
+
+    @Test
+    public void testNearCacheNeverPinsRemovedNodes() throws InterruptedException {
+        SoftConcurrentHashMap<String, String> map = SoftConcurrentHashMap.<String, String>builder()
+                .nearCache(16)
+                .build();
+        String key = new String("removed");
+        WeakReference<String> collectedKey = new WeakReference<>(key);
+        map.putAsSoft(key, "v");
+        Assert.assertEquals("v", map.getOnSoft("removed"));
+        Assert.assertEquals("v", map.getOnSoft("removed"));
+        map.remove("removed");
+        key = null;
+        //the slot of the current thread is never read again, so it isn't cleared as stale
+        for (int i = 0; i < 50 && Objects.nonNull(collectedKey.get()); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertNull(collectedKey.get());
+        Assert.assertNull(map.getOnSoft("removed"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNearCacheRejectsExpireAfterAccess() {
+        SoftConcurrentHashMap.<Integer, String>builder()
+                .nearCache(16)
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .build();
+    }
+
+    @Test
+    public void testRemovalListener() throws InterruptedException {
+        AtomicLong ticker = new AtomicLong();
+        List<String> removals = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch delivered = new CountDownLatch(14);
+        Thread caller = Thread.currentThread();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SoftConcurrentHashMap<Integer, String> map = SoftConcurrentHashMap.<Integer, String>builder()
+                .maximumSize(10)
+                .expireAfterWrite(10, TimeUnit.SECONDS)
+                .ticker(ticker::get)
+                .reclaimMode(ReclaimMode.ON_WRITE)
+                .executor(executor)
+                .removalListener((k, v, cause) -> {
+                    removals.add(k + "=" + v + ":" + cause + (Thread.currentThread() == caller ? " on caller" : ""));
+                    delivered.countDown();
+                })
+                .build();
+        map.putAsSoft(1, "a");
+        map.putAsSoft(1, "b");
+        map.remove(1);
+        map.putAsSoft(2, "c");
+        map.get(2).clear();
+        map.get(2).enqueue();
+        map.putAsSoft(3, "d");
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        Assert.assertNull(map.getOnSoft(3));
+        for (int i = 100; i < 120; i++) {
+            map.putAsSoft(i, "v" + i);
+        }
+        Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        Assert.assertEquals(Arrays.asList("1=a:REPLACED", "1=b:EXPLICIT", "2=null:COLLECTED", "3=d:EXPIRED"),
+                removals.subList(0, 4));
+        Assert.assertEquals(10, removals.stream().filter(r -> r.endsWith(":EVICTED")).count());
+    }
+
+    private static List<Long> usageThresholdsOfHeap() {
+        List<Long> thresholds = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()) {
+                thresholds.add(pool.getUsageThreshold());
+            }
+        }
+        return thresholds;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+Copyright 2022~Forever xasync.com under one or more contributor authorized.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.xasync.island.datastruct;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SoftMapSnapshotTest
+ *
+ * @author xasync.com
+ */
+public class SoftMapSnapshotTest {
+    private final static ValueCodec<String> STRING_CODEC = new ValueCodec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndRestoreValues() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("values.snapshot");
+        SoftConcurrentHashMap<String, String> map = new SoftConcurrentHashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            //the large values are written across the buffers
+            map.putAsSoft("k" + i, i % 1_000 == 0 ? new String(new char[100_000]).replace('\0', 'x') : "v" + i);
+        }
+        SoftMapSnapshot<String, String> snapshot = snapshotOf(map, file).valueCodec(STRING_CODEC).build();
+        Assert.assertEquals(5_000, snapshot.save());
+        Assert.assertFalse(Files.exists(file.resolveSibling("values.snapshot.tmp")));
+
+        SoftConcurrentHashMap<String, String> restored = new SoftConcurrentHashMap<>();
+        Assert.assertEquals(5_000, snapshotOf(restored, file).valueCodec(STRING_CODEC).build().restore());
+        for (int i = 0; i < 5_000; i++) {
+            Assert.assertEquals(map.getOnSoft("k" + i), restored.getOnSoft("k" + i));
+        }
+    }
+
+    @Test
+    public void testRestoreKeysThroughRateLimitedLoader() {
+        Path file = folder.getRoot().toPath().resolve("keys.snapshot");
+        AtomicLong ticker = new AtomicLong();
+        SoftConcurrentHashMap<String, String> map = SoftConcurrentHashMap.<String, String>builder()
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .ticker(ticker::get)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            ticker.incrementAndGet();
+            map.putAsSoft("k" + i, "v" + i);
+        }
+        Set<String> loaded = ConcurrentHashMap.newKeySet();
+        Assert.assertEquals(20, snapshotOf(map, file).maximumKeys(20).loader(k -> "x").build().save());
+
+        SoftConcurrentHashMap<String, String> restored = new SoftConcurrentHashMap<>();
+        restored.putAsSoft("k99", "present");
+        long start = System.nanoTime();
+        int count = snapshotOf(restored, file)
+                .loader(k -> {
+                    loaded.add(k);
+                    return k.equals("k80") ? null : k.replace('k', 'v');
+                })
+                .parallelism(4)
+                .loadsPerSecond(100)
+                .build()
+                .restore();
+        long elapsed = System.nanoTime() - start;
+        //the most recently written keys are saved, the present key and the missing one aren't restored
+        Assert.assertEquals(18, count);
+        Assert.assertEquals(19, loaded.size());
+        Assert.assertEquals("present", restored.getOnSoft("k99"));
+        Assert.assertEquals("v81", restored.getOnSoft("k81"));
+        Assert.assertNull(restored.getOnSoft("k79"));
+        Assert.assertTrue("elapsed " + elapsed, elapsed >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void testRestoreRejectsForeignFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("foreign.snapshot");
+        Files.write(file, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        SoftMapSnapshot<String, String> snapshot = snapshotOf(new SoftConcurrentHashMap<>(), file)
+                .valueCodec(STRING_CODEC)
+                .build();
+        try {
+            snapshot.restore();
+            Assert.fail("the foreign file is restored");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(expected.getMessage().contains("isn't a snapshot"));
+        }
+        Assert.assertEquals(0, snapshotOf(new SoftConcurrentHashMap<>(), file.resolveSibling("absent"))
+                .valueCodec(STRING_CODEC).build().restore());
+    }
+
+    @Test
+    public void testRestoreRejectsCorruptedLengths() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("corrupted.snapshot");
+        SoftConcurrentHashMap<String, String> map = new SoftConcurrentHashMap<>();
+        map.putAsSoft("k", "v");
+        Assert.assertEquals(1, snapshotOf(map, file).valueCodec(STRING_CODEC).build().save());
+        byte[] saved = Files.readAllBytes(file);
+        //overwrites the count, the length of the first key and the length of its value, which follow the magic and
+        //the version
+        int[][] corruptions = {{Integer.BYTES * 2, Integer.MAX_VALUE}, {Integer.BYTES * 3, -2},
+                {Integer.BYTES * 3, Integer.MAX_VALUE}, {Integer.BYTES * 4 + 1, Integer.MAX_VALUE - 8}};
+        for (int[] corruption : corruptions) {
+            byte[] bytes = saved.clone();
+            ByteBuffer.wrap(bytes).putInt(corruption[0], corruption[1]);
+            Files.write(file, bytes);
+            try {
+                snapshotOf(new SoftConcurrentHashMap<>(), file).valueCodec(STRING_CODEC).build().restore();
+                Assert.fail("the corrupted file is restored");
+            } catch (IllegalArgumentException expected) {
+                Assert.assertTrue(expected.getMessage().contains("is corrupted"));
+            }
+        }
+    }
+
+    private static SoftMapSnapshot.Builder<String, String> snapshotOf(SoftConcurrentHashMap<String, String> map,
+                                                                      Path file) {
+        return SoftMapSnapshot.<String, String>builder()
+                .map(map)
+                .file(file)
+                .keyCodec(STRING_CODEC);
+    }
+}
@@ -17,9 +17,19 @@ package com.xasync.island.ifkiller;
 
 import com.xasync.island.ifkiller.biz.bark.AnimalBarkAbility;
 import com.xasync.island.ifkiller.biz.bark.BarkTypeEnum;
+import com.xasync.island.ifkiller.biz.bark.impl.CatAnimalBarkAbility;
+import com.xasync.island.ifkiller.biz.bark.impl.DuckAnimalBarkAbility;
+import com.xasync.island.ifkiller.biz.level.LevelAbility;
+import com.xasync.island.ifkiller.biz.level.LevelTypeEnum;
+import com.xasync.island.spring.SpringContexts;
 import com.xasync.island.test.BaseSpringTest;
 import org.junit.Assert;
 import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * IfKillersTest
@@ -47,4 +57,170 @@ public class IfKillersTest extends BaseSpringTest {
         /* the default implementation is DuckAnimalBarkAbility */
         Assert.assertEquals(BarkTypeEnum.DUCK.getCode(), voice2);
     }
+
+    @Test
+    public void testEagerIndex() {
+        Map<Class<?>, IfKillerIndex<?>> indexes = IfKillerIndexer.index(SpringContexts.getApplicationContext());
+        IfKillerIndex<?> index = indexes.get(AnimalBarkAbility.class);
+        Assert.assertTrue(index.get(BarkTypeEnum.CAT_CODE) instanceof CatAnimalBarkAbility);
+        Assert.assertNull(index.get("goose"));
+        Assert.assertTrue(index.getDefault() instanceof DuckAnimalBarkAbility);
+        Assert.assertSame(index.get(BarkTypeEnum.CAT_CODE), indexes.get(CatAnimalBarkAbility.class).get("cat"));
+
+        // the lazy way keeps working without the index
+        IfKillerProxy<AnimalBarkAbility> lazy = IfKillerProxy.create(AnimalBarkAbility.class);
+        Assert.assertEquals(BarkTypeEnum.TIGER_CODE, lazy.meet(" tiger ").start());
+        Assert.assertEquals(BarkTypeEnum.DUCK_CODE, lazy.meet("goose").start());
+    }
+
+    @Test
+    public void testIndexerIgnoresChildContexts() {
+        AnimalBarkAbility cat;
+        try (AnnotationConfigApplicationContext parent = new AnnotationConfigApplicationContext(
+                IfKillerIndexer.class, CatAnimalBarkAbility.class, DuckAnimalBarkAbility.class)) {
+            cat = parent.getBean(CatAnimalBarkAbility.class);
+            Assert.assertSame(cat, IfKillers.about(AnimalBarkAbility.class).meet(BarkTypeEnum.CAT_CODE));
+
+            AnnotationConfigApplicationContext child = new AnnotationConfigApplicationContext();
+            child.setParent(parent);
+            child.refresh();
+            child.close();
+            /* the refresh of the child context doesn't replace the indexes of the parent */
+            Assert.assertSame(cat, IfKillers.about(AnimalBarkAbility.class).meet(BarkTypeEnum.CAT_CODE));
+            Assert.assertEquals(BarkTypeEnum.DUCK_CODE, IfKillers.about(AnimalBarkAbility.class).meet("goose").start());
+        }
+        /* the proxies return to the lazy mode once the context of the indexer is closed */
+        AnimalBarkAbility lazyCat = IfKillers.about(AnimalBarkAbility.class).meet(BarkTypeEnum.CAT_CODE);
+        Assert.assertNotSame(cat, lazyCat);
+        Assert.assertSame(SpringContexts.getApplicationContext().getBean(CatAnimalBarkAbility.class), lazyCat);
+    }
+
+    @Test
+    public void testUnknownTokensResolveToDefault() {
+        AtomicInteger lookups = new AtomicInteger();
+        IfKillerProxy<AnimalBarkAbility> lazy = IfKillerProxy.create(AnimalBarkAbility.class, () -> {
+            lookups.incrementAndGet();
+            return SpringContexts.getApplicationContext();
+        });
+        Assert.assertEquals(BarkTypeEnum.DUCK_CODE, lazy.meet("junk").start());
+        Assert.assertEquals(1, lookups.get());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(BarkTypeEnum.DUCK_CODE, lazy.meet("junk").start());
+        }
+        /* the repeated unknown token is resolved without scanning the context again */
+        Assert.assertEquals(1, lookups.get());
+
+        for (int i = 0; i < 3_000; i++) {
+            Assert.assertEquals(BarkTypeEnum.DUCK_CODE, lazy.meet("junk" + i % 2_000).start());
+            Assert.assertTrue(lazy.unknownTokens() <= IfKillerProxy.MAX_UNKNOWN_TOKENS);
+        }
+        lazy.invalidateUnknownTokens();
+        Assert.assertEquals(0, lazy.unknownTokens());
+        Assert.assertEquals(BarkTypeEnum.DUCK_CODE, lazy.meet("junk0").start());
+        Assert.assertEquals(1, lazy.unknownTokens());
+        Assert.assertEquals(BarkTypeEnum.CAT_CODE, lazy.meet(BarkTypeEnum.CAT_CODE).start());
+    }
+
+    @Test
+    public void testDispatcher() {
+        AnimalBarkAbility dispatcher = IfKillers.dispatcher(AnimalBarkAbility.class);
+        Assert.assertSame(dispatcher, IfKillers.dispatcher(AnimalBarkAbility.class));
+        Assert.assertEquals("catcat", dispatcher.repeat(BarkTypeEnum.CAT_CODE, 2));
+        Assert.assertEquals(BarkTypeEnum.TIGER_CODE, dispatcher.repeat(BarkTypeEnum.TIGER_CODE, 1));
+        Assert.assertEquals(BarkTypeEnum.DUCK_CODE, dispatcher.repeat("goose", 1));
+        /* the method without a token meets the default implementation */
+        Assert.assertEquals(BarkTypeEnum.DUCK_CODE, dispatcher.start());
+        Assert.assertEquals(dispatcher, dispatcher);
+    }
+
+    @Test
+    public void testEnumAndIntTokens() {
+        IfKillerProxy<AnimalBarkAbility> eagerBark = eager(AnimalBarkAbility.class);
+        IfKillerProxy<AnimalBarkAbility> lazyBark = IfKillerProxy.create(AnimalBarkAbility.class);
+        for (IfKillerProxy<AnimalBarkAbility> proxy : Arrays.asList(eagerBark, lazyBark)) {
+            for (BarkTypeEnum type : BarkTypeEnum.values()) {
+                Assert.assertEquals(type.getCode(), proxy.meetEnum(type).start());
+            }
+        }
+
+        IfKillerProxy<LevelAbility> eager = eager(LevelAbility.class);
+        IfKillerProxy<LevelAbility> lazy = IfKillerProxy.create(LevelAbility.class);
+        for (IfKillerProxy<LevelAbility> proxy : Arrays.asList(eager, lazy)) {
+            Assert.assertEquals("low", proxy.meetEnum(LevelTypeEnum.LOW).grade());
+            /* HIGH meets the token 'High' ignoring case */
+            Assert.assertEquals("high", proxy.meetEnum(LevelTypeEnum.HIGH).grade());
+            Assert.assertEquals("low", proxy.meetEnum(null).grade());
+            Assert.assertEquals("low", proxy.meetInt(1).grade());
+            Assert.assertEquals("high", proxy.meetInt(2).grade());
+            Assert.assertEquals("low", proxy.meetInt(3).grade());
+            Assert.assertEquals("low", proxy.meetInt(Integer.MIN_VALUE).grade());
+            Assert.assertEquals("high", proxy.meet("2").grade());
+        }
+
+        LevelAbility dispatcher = IfKillers.dispatcher(LevelAbility.class);
+        Assert.assertEquals("high", dispatcher.gradeOf(LevelTypeEnum.HIGH));
+        Assert.assertEquals("high", dispatcher.gradeOf(2));
+        Assert.assertEquals("low", dispatcher.gradeOf(5));
+    }
+
+    @Test
+    public void testEnumTokensRejectAmbiguousCase() {
+        /* 'middle' and 'Middle' are declared by different implementations */
+        for (IfKillerProxy<LevelAbility> proxy : Arrays.asList(eager(LevelAbility.class),
+                IfKillerProxy.create(LevelAbility.class))) {
+            try {
+                proxy.meetEnum(AmbiguousLevel.MIDDLE);
+                Assert.fail("the ambiguous tokens are met");
+            } catch (IllegalStateException expected) {
+                Assert.assertTrue(expected.getMessage().contains("ambiguous"));
+            }
+            Assert.assertEquals("middle", proxy.meet("middle").grade());
+            Assert.assertEquals("upper-middle", proxy.meet("Middle").grade());
+        }
+    }
+
+    @Test
+    public void testEagerAndLazyFailTheSameWay() {
+        IfKillerProxy<UnmetAbility> eager = IfKillerProxy.create(UnmetAbility.class);
+        eager.install(IfKillerIndex.empty());
+        IfKillerProxy<UnmetAbility> lazy = IfKillerProxy.create(UnmetAbility.class);
+        for (String token : Arrays.asList("junk", " ")) {
+            String eagerMessage = null;
+            String lazyMessage = null;
+            try {
+                eager.meet(token);
+            } catch (RuntimeException e) {
+                eagerMessage = e.getMessage();
+            }
+            try {
+                lazy.meet(token);
+            } catch (RuntimeException e) {
+                lazyMessage = e.getMessage();
+            }
+            Assert.assertNotNull(eagerMessage);
+            Assert.assertEquals(lazyMessage, eagerMessage);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDispatcherRequiresInterface() {
+        IfKillers.dispatcher(CatAnimalBarkAbility.class);
+    }
+
+    /**
+     * The proxy with the eager index of the spring context, which doesn't register IfKillerIndexer
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> IfKillerProxy<T> eager(Class<T> clazz) {
+        IfKillerProxy<T> proxy = IfKillerProxy.create(clazz);
+        proxy.install((IfKillerIndex<T>) IfKillerIndexer.index(SpringContexts.getApplicationContext()).get(clazz));
+        return proxy;
+    }
+
+    private enum AmbiguousLevel {
+        MIDDLE
+    }
+
+    private interface UnmetAbility {
+    }
 }
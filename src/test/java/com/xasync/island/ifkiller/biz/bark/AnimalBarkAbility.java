@@ -15,6 +15,8 @@ limitations under the License.
 */
 package com.xasync.island.ifkiller.biz.bark;
 
+import com.xasync.island.ifkiller.annotation.IfKillerToken;
+
 /**
  * RolePermissionService
  *
@@ -22,4 +24,12 @@ package com.xasync.island.ifkiller.biz.bark;
  */
 public interface AnimalBarkAbility {
     String start();
+
+    default String repeat(@IfKillerToken String animal, int times) {
+        StringBuilder voices = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            voices.append(start());
+        }
+        return voices.toString();
+    }
 }